@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.v1.XmlPullParserException;
+
+
+/**
+ * Measures parsing, scanning, merging and rendering of change logs of different sizes.
+ *
+ * <p>
+ * Run with {@code ./gradlew :ckChangeLog-benchmark:benchmark}. The GC profiler is enabled by
+ * default, so the results include the allocation rate ({@code gc.alloc.rate.norm}).
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChangeLogBenchmark {
+    /**
+     * Same as {@code ChangeLog.DEFAULT_CSS}.
+     */
+    private static final String CSS =
+            "h1 { margin-left: 0px; font-size: 1.2em; }" + "\n" +
+            "li { margin-left: 0px; }" + "\n" +
+            "ul { padding-left: 2em; }";
+
+    private static final String VERSION_FORMAT = "Version %s";
+
+
+    /**
+     * Number of releases in the master change log.
+     */
+    @Param({ "10", "1000", "50000" })
+    public int releaseCount;
+
+    private String mMasterXml;
+    private byte[] mMasterXmlBytes;
+    private List<Release> mMaster;
+    private List<Release> mLocalized;
+    private int[] mMasterVersionCodes;
+    private Release[] mMasterReleases;
+    private int[][] mLocalizedVersionCodes;
+    private Release[][] mLocalizedReleases;
+    private HtmlRenderer mRenderer;
+
+
+    @Setup
+    public void setUp() throws IOException, XmlPullParserException {
+        mMasterXml = SyntheticChangeLog.createMaster(releaseCount);
+        mMasterXmlBytes = mMasterXml.getBytes("UTF-8");
+        mMaster = SyntheticChangeLog.parse(mMasterXml);
+        mLocalized = SyntheticChangeLog.parse(SyntheticChangeLog.createLocalized(releaseCount));
+        mMasterVersionCodes = getVersionCodes(mMaster);
+        mMasterReleases = mMaster.toArray(new Release[mMaster.size()]);
+        mLocalizedVersionCodes = new int[][] { getVersionCodes(mLocalized) };
+        mLocalizedReleases = new Release[][] { mLocalized.toArray(new Release[mLocalized.size()]) };
+        mRenderer = new HtmlRenderer(CSS, VERSION_FORMAT);
+    }
+
+    @Benchmark
+    public List<Release> parse() throws IOException, XmlPullParserException {
+        return SyntheticChangeLog.parse(mMasterXml);
+    }
+
+    @Benchmark
+    public List<Release> scan() throws IOException {
+        return SyntheticChangeLog.scan(mMasterXmlBytes);
+    }
+
+    /**
+     * The merge used by {@code ChangeLog.getChangeLog(boolean)}, see {@code ReleaseIndex.merge()}.
+     */
+    @Benchmark
+    public Release[] merge() {
+        return ReleaseMerger.merge(mMasterVersionCodes, mMasterReleases, mLocalizedVersionCodes,
+                mLocalizedReleases);
+    }
+
+    /**
+     * The merge used when writing the change log while reading it, e.g. by
+     * {@code ChangeLog.writeLog(Appendable)}.
+     */
+    @Benchmark
+    public void mergeWhileReading(Blackhole blackhole) throws IOException {
+        ReleaseReader<Release> reader = new MergingReleaseReader<Release>(
+                new ListReleaseReader(mMaster), new ListReleaseReader(mLocalized));
+
+        Release release;
+        while ((release = reader.next()) != null) {
+            blackhole.consume(release);
+        }
+    }
+
+    @Benchmark
+    public StringBuilder render() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        mRenderer.render(sb, mMaster);
+
+        return sb;
+    }
+
+    private static int[] getVersionCodes(List<Release> releases) {
+        int[] versionCodes = new int[releases.size()];
+        for (int i = 0; i < versionCodes.length; i++) {
+            versionCodes[i] = releases.get(i).versionCode;
+        }
+
+        return versionCodes;
+    }
+
+
+    /**
+     * Returns releases from a list that is already in memory.
+     */
+    private static final class ListReleaseReader implements ReleaseReader<Release> {
+        private final List<Release> mReleases;
+        private int mIndex = 0;
+
+        ListReleaseReader(List<Release> releases) {
+            mReleases = releases;
+        }
+
+        @Override
+        public Release next() {
+            return (mIndex < mReleases.size()) ? mReleases.get(mIndex++) : null;
+        }
+
+        @Override
+        public void close() {
+            // Do nothing
+        }
+    }
+}
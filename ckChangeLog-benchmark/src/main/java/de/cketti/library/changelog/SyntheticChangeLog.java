@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+
+/**
+ * Creates change logs of arbitrary size for the benchmarks.
+ */
+final class SyntheticChangeLog {
+    static final Release.Factory<Release> FACTORY = new Release.Factory<Release>() {
+        @Override
+        public Release createRelease(int versionCode, String versionName, List<String> changes) {
+            return new Release(versionCode, versionName, changes);
+        }
+    };
+
+    private static final int CHANGES_PER_RELEASE = 3;
+
+
+    private SyntheticChangeLog() {
+    }
+
+    /**
+     * Create a master change log containing {@code releaseCount} releases, latest version first.
+     */
+    static String createMaster(int releaseCount) {
+        return create(releaseCount, 1, "Change");
+    }
+
+    /**
+     * Create a localized change log that only contains every second release of the master
+     * change log created by {@link #createMaster(int)}.
+     */
+    static String createLocalized(int releaseCount) {
+        return create(releaseCount, 2, "\u00c4nderung");
+    }
+
+    /**
+     * Read all releases of a change log created by this class.
+     */
+    static List<Release> parse(String xml) throws IOException, XmlPullParserException {
+        XmlPullParser parser = new KXmlParser();
+        parser.setInput(new StringReader(xml));
+
+        ReleaseReader<Release> reader =
+                new XmlReleaseReader<Release>(parser, FACTORY, ReleaseReader.ALL_VERSIONS);
+        List<Release> result = new ArrayList<Release>();
+        Release release;
+        while ((release = reader.next()) != null) {
+            result.add(release);
+        }
+
+        return result;
+    }
+
+    /**
+     * Read all releases of a change log created by this class using {@link ChangeLogScanner}.
+     */
+    static List<Release> scan(byte[] xml) throws IOException {
+        ReleaseReader<Release> reader = new ChangeLogScanner<Release>(
+                new ByteArrayInputStream(xml), FACTORY, ReleaseReader.ALL_VERSIONS,
+                Integer.MAX_VALUE);
+        List<Release> result = new ArrayList<Release>();
+        Release release;
+        while ((release = reader.next()) != null) {
+            result.add(release);
+        }
+
+        return result;
+    }
+
+    private static String create(int releaseCount, int step, String changeText) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        sb.append("<changelog>\n");
+        for (int versionCode = releaseCount; versionCode > 0; versionCode -= step) {
+            sb.append("    <release version=\"1.").append(versionCode)
+                    .append("\" versioncode=\"").append(versionCode).append("\">\n");
+            for (int i = 1; i <= CHANGES_PER_RELEASE; i++) {
+                sb.append("        <change>").append(changeText).append(' ').append(i)
+                        .append(" in version ").append(versionCode)
+                        .append(" with &lt;b&gt;markup&lt;/b&gt; &amp; entities</change>\n");
+            }
+            sb.append("    </release>\n");
+        }
+        sb.append("</changelog>\n");
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,973 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * {@link ReleaseReader} scanning the bytes of a change log XML file.
+ *
+ * <p>
+ * This is a faster alternative to {@link XmlReleaseReader} that only understands the change log
+ * format ({@code <changelog>}, {@code <release>} and {@code <change>} elements) encoded as UTF-8.
+ * It works directly on the bytes read from the stream. Tag names are compared byte by byte,
+ * version codes are parsed without creating strings, and releases that are skipped aren't
+ * decoded at all. Only the version names and change texts of the returned releases are
+ * allocated.
+ * </p>
+ *
+ * <p>
+ * Comments, processing instructions, CDATA sections and the predefined and numeric character
+ * references are supported. Other markup inside a {@code release} element is interpreted exactly
+ * like {@code XmlReleaseReader} does: the text of a {@code change} element ends at the first
+ * nested tag, and the release ends at the first end tag other than {@code </change>}. The only
+ * known difference is that character references outside of the Basic Multilingual Plane are
+ * decoded correctly, while some kXML versions truncate them to 16 bits.
+ * </p>
+ *
+ * <p>
+ * A document declaring an encoding other than UTF-8 or US-ASCII or starting with a UTF-16 byte
+ * order mark causes {@link #next()} to throw an {@link UnsupportedEncodingException}. Use
+ * {@link #canScan(byte[], int)} to check the beginning of a file in advance.
+ * </p>
+ *
+ * @param <T>
+ *         The type of release returned by this reader.
+ */
+public final class ChangeLogScanner<T extends Release> implements ReleaseReader<T> {
+    /**
+     * Number of bytes {@link #canScan(byte[], int)} needs to see to detect the encoding.
+     */
+    public static final int HEADER_SIZE = 256;
+
+    /**
+     * Version code used for releases without a valid {@code versioncode} attribute.
+     */
+    private static final int NO_VERSION = -1;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int EOF = -1;
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    private static final byte[] RELEASE = bytes("release");
+    private static final byte[] CHANGE = bytes("change");
+    private static final byte[] VERSION = bytes("version");
+    private static final byte[] VERSION_CODE = bytes("versioncode");
+    private static final byte[] XML = bytes("xml");
+    private static final byte[] ENCODING = bytes("encoding");
+    private static final byte[] CDATA = bytes("CDATA[");
+
+    // Markup types returned by readMarkup()
+    private static final int MARKUP_OTHER = 0;
+    private static final int MARKUP_START_TAG = 1;
+    private static final int MARKUP_END_TAG = 2;
+
+    // Events returned by nextEvent()
+    private static final int EVENT_START_TAG = 1;
+    private static final int EVENT_END_TAG = 2;
+    private static final int EVENT_TEXT = 3;
+
+    // Tags whose attributes are read by readAttributes()
+    private static final int TAG_OTHER = 0;
+    private static final int TAG_RELEASE = 1;
+    private static final int TAG_DECLARATION = 2;
+
+    // Terminators of skipPast(), encoded as the last bytes read
+    private static final int END_OF_COMMENT = ('-' << 16) | ('-' << 8) | '>';
+    private static final int END_OF_PROCESSING_INSTRUCTION = ('?' << 8) | '>';
+    private static final int END_OF_CDATA = (']' << 16) | (']' << 8) | '>';
+
+
+    private final InputStream mIn;
+    private final Release.Factory<T> mFactory;
+    private final int mNewerThan;
+    private final int mMaxVersionCode;
+
+    private final byte[] mBuffer;
+    private int mPosition = 0;
+    private int mLimit = 0;
+
+    /**
+     * Name of the last tag read by {@link #readName()}.
+     */
+    private byte[] mName = new byte[16];
+    private int mNameLength;
+
+    /**
+     * Decoded text of the current change or attribute value.
+     */
+    private char[] mText = new char[256];
+    private int mTextLength;
+    private boolean mLastWasCarriageReturn;
+
+    /**
+     * Attributes of the current {@code release} tag.
+     */
+    private int mVersionCode;
+    private char[] mVersionName = new char[16];
+    private int mVersionNameLength;
+
+    /**
+     * State of {@link #nextEvent()}.
+     */
+    private boolean mChangeTag;
+    private boolean mPendingTag = false;
+    private boolean mPendingEndTag = false;
+
+    private final byte[] mEntity = new byte[12];
+    private boolean mStarted = false;
+    private boolean mFinished = false;
+
+
+    /**
+     * Create a {@code ChangeLogScanner} instance.
+     *
+     * @param in
+     *         The stream containing the (uncompressed) change log XML file. It is closed by
+     *         {@link #close()}.
+     * @param factory
+     *         Used to create the returned releases.
+     * @param newerThan
+     *         Stop reading when encountering a release with a version code lower than or equal to
+     *         this value. Use {@link #ALL_VERSIONS} to read the full change log.
+     * @param maxVersionCode
+     *         Releases with a version code higher than this value are skipped without decoding
+     *         their changes.
+     */
+    public ChangeLogScanner(InputStream in, Release.Factory<T> factory, int newerThan,
+            int maxVersionCode) {
+        this(in, factory, newerThan, maxVersionCode, BUFFER_SIZE);
+    }
+
+    private ChangeLogScanner(InputStream in, Release.Factory<T> factory, int newerThan,
+            int maxVersionCode, int bufferSize) {
+        mIn = in;
+        mFactory = factory;
+        mNewerThan = newerThan;
+        mMaxVersionCode = maxVersionCode;
+        mBuffer = new byte[bufferSize];
+    }
+
+    /**
+     * Check whether a change log XML file can be read by this class.
+     *
+     * @param header
+     *         The first bytes of the file. {@link #HEADER_SIZE} bytes are enough to find the
+     *         encoding declaration.
+     * @param length
+     *         The number of bytes in {@code header}.
+     *
+     * @return {@code false} if the file isn't encoded as UTF-8 or US-ASCII. {@code true} otherwise,
+     *         even if the header contains errors.
+     */
+    public static boolean canScan(byte[] header, int length) {
+        ChangeLogScanner<Release> scanner = new ChangeLogScanner<Release>(
+                new ByteArrayInputStream(header, 0, length), null, ALL_VERSIONS,
+                Integer.MAX_VALUE, Math.max(length, 1));
+        try {
+            scanner.readDeclaration();
+            return true;
+        } catch (UnsupportedEncodingException e) {
+            return false;
+        } catch (IOException e) {
+            // Errors are reported when the file is actually read
+            return true;
+        }
+    }
+
+    @Override
+    public T next() throws IOException {
+        if (mFinished) {
+            return null;
+        }
+
+        try {
+            if (!mStarted) {
+                mStarted = true;
+                readDeclaration();
+            }
+
+            while (skipTo('<')) {
+                int markup = readMarkup();
+                if (markup != MARKUP_START_TAG) {
+                    continue;
+                }
+
+                if (!nameEquals(RELEASE)) {
+                    readAttributes(TAG_OTHER);
+                    continue;
+                }
+
+                boolean empty = readAttributes(TAG_RELEASE) == '/';
+                int versionCode = mVersionCode;
+                if (mNewerThan != ALL_VERSIONS && versionCode <= mNewerThan) {
+                    // Stop reading more elements if this entry is not newer than the last
+                    // version.
+                    break;
+                }
+
+                if (versionCode <= mMaxVersionCode) {
+                    return readRelease(versionCode, empty);
+                }
+
+                if (!empty) {
+                    skipElement();
+                }
+            }
+        } catch (IOException e) {
+            mFinished = true;
+            throw e;
+        }
+
+        mFinished = true;
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFinished = true;
+        mIn.close();
+    }
+
+    /**
+     * Skip a byte order mark and read the XML declaration, if present.
+     */
+    private void readDeclaration() throws IOException {
+        fillAtLeast(6);
+
+        int available = mLimit - mPosition;
+        if (available >= 2) {
+            int first = mBuffer[mPosition] & 0xFF;
+            int second = mBuffer[mPosition + 1] & 0xFF;
+            if ((first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE)) {
+                throw new UnsupportedEncodingException("UTF-16");
+            }
+        }
+        if (available >= 3 && (mBuffer[mPosition] & 0xFF) == 0xEF &&
+                (mBuffer[mPosition + 1] & 0xFF) == 0xBB &&
+                (mBuffer[mPosition + 2] & 0xFF) == 0xBF) {
+            mPosition += 3;
+            fillAtLeast(6);
+        }
+
+        if (mLimit - mPosition >= 6 && mBuffer[mPosition] == '<' &&
+                mBuffer[mPosition + 1] == '?' && mBuffer[mPosition + 2] == 'x' &&
+                mBuffer[mPosition + 3] == 'm' && mBuffer[mPosition + 4] == 'l' &&
+                isWhitespace(mBuffer[mPosition + 5])) {
+            mPosition += 5;
+            readAttributes(TAG_DECLARATION);
+        }
+    }
+
+    /**
+     * Read the markup following a {@code '<'}.
+     *
+     * <p>
+     * Comments, processing instructions, CDATA sections and declarations are skipped. For tags
+     * the name is read into {@link #mName}. The attributes of start tags are not read.
+     * </p>
+     */
+    private int readMarkup() throws IOException {
+        int c = read();
+        switch (c) {
+            case '?': {
+                skipPast(END_OF_PROCESSING_INSTRUCTION, 2);
+                return MARKUP_OTHER;
+            }
+            case '!': {
+                skipDeclaration();
+                return MARKUP_OTHER;
+            }
+            case '/': {
+                readName();
+                readAttributes(TAG_OTHER);
+                return MARKUP_END_TAG;
+            }
+            case EOF: {
+                throw unexpectedEndOfFile();
+            }
+            default: {
+                unread();
+                readName();
+                return MARKUP_START_TAG;
+            }
+        }
+    }
+
+    /**
+     * Skip a comment, CDATA section or document type declaration following {@code "<!"}.
+     */
+    private void skipDeclaration() throws IOException {
+        int c = read();
+        if (c == '-') {
+            expect('-');
+            skipPast(END_OF_COMMENT, 3);
+        } else if (c == '[') {
+            expect(CDATA);
+            skipPast(END_OF_CDATA, 3);
+        } else {
+            // Document type declaration, possibly with an internal subset
+            int depth = 0;
+            while (c != '>' || depth > 0) {
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (c == EOF) {
+                    throw unexpectedEndOfFile();
+                }
+                c = read();
+            }
+        }
+    }
+
+    /**
+     * Read the attributes of a tag up to and including the closing {@code '>'}.
+     *
+     * @param tag
+     *         Decides which attributes are stored. For {@link #TAG_RELEASE} the version code and
+     *         version name are stored in {@link #mVersionCode} and {@link #mVersionName}. For
+     *         {@link #TAG_DECLARATION} the encoding is checked.
+     *
+     * @return {@code '/'} for empty-element tags, {@code '>'} otherwise.
+     */
+    private int readAttributes(int tag) throws IOException {
+        if (tag == TAG_RELEASE) {
+            mVersionCode = NO_VERSION;
+            mVersionNameLength = -1;
+        }
+
+        while (true) {
+            int c = skipWhitespace();
+            if (c == '>') {
+                return '>';
+            } else if (c == '/' || c == '?') {
+                expect('>');
+                return '/';
+            } else if (c == EOF) {
+                throw unexpectedEndOfFile();
+            }
+
+            unread();
+            readName();
+
+            if (skipWhitespace() != '=') {
+                throw new IOException("Expected '=' after attribute name");
+            }
+            int quote = skipWhitespace();
+            if (quote != '"' && quote != '\'') {
+                throw new IOException("Expected quoted attribute value");
+            }
+
+            if (tag == TAG_RELEASE && nameEquals(VERSION_CODE)) {
+                mVersionCode = readVersionCode(quote);
+            } else if (tag == TAG_RELEASE && nameEquals(VERSION)) {
+                readAttributeValue(quote);
+                mVersionName = ensureCapacity(mVersionName, mTextLength);
+                System.arraycopy(mText, 0, mVersionName, 0, mTextLength);
+                mVersionNameLength = mTextLength;
+            } else if (tag == TAG_DECLARATION && nameEquals(ENCODING)) {
+                readAttributeValue(quote);
+                checkEncoding();
+            } else if (!skipTo(quote)) {
+                throw unexpectedEndOfFile();
+            }
+        }
+    }
+
+    /**
+     * Parse the value of a {@code versioncode} attribute like {@link Integer#parseInt(String)}.
+     *
+     * @return The version code or {@link #NO_VERSION} if the value isn't a valid number.
+     */
+    private int readVersionCode(int quote) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        boolean valid = true;
+        int digits = 0;
+
+        int c = read();
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            c = read();
+        }
+
+        while (c != quote) {
+            if (c == EOF) {
+                throw unexpectedEndOfFile();
+            }
+
+            if (c >= '0' && c <= '9' && valid) {
+                value = value * 10 + (c - '0');
+                digits++;
+                if (value > (long) Integer.MAX_VALUE + 1) {
+                    valid = false;
+                }
+            } else {
+                valid = false;
+            }
+            c = read();
+        }
+
+        if (negative) {
+            value = -value;
+        }
+
+        if (!valid || digits == 0 || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            return NO_VERSION;
+        }
+
+        return (int) value;
+    }
+
+    private void checkEncoding() throws UnsupportedEncodingException {
+        if (!textEqualsIgnoreCase("UTF-8") && !textEqualsIgnoreCase("UTF8") &&
+                !textEqualsIgnoreCase("US-ASCII") && !textEqualsIgnoreCase("ASCII")) {
+            throw new UnsupportedEncodingException(new String(mText, 0, mTextLength));
+        }
+    }
+
+    /**
+     * Read the changes of the current {@code release} element.
+     *
+     * <p>
+     * This mirrors {@code XmlReleaseReader.parseReleaseTag()} event by event, so markup outside of
+     * the change log format produces the same releases: the text of a {@code change} element ends
+     * at the first nested tag, and the release ends at the first end tag other than
+     * {@code </change>}.
+     * </p>
+     */
+    private T readRelease(int versionCode, boolean empty) throws IOException {
+        String versionName = (mVersionNameLength == -1) ?
+                null : new String(mVersionName, 0, mVersionNameLength);
+
+        List<String> changes = new ArrayList<String>();
+        if (!empty) {
+            int event = nextEvent();
+            while (event != EVENT_END_TAG || mChangeTag) {
+                if (event == EVENT_START_TAG && mChangeTag) {
+                    event = nextEvent();
+                    changes.add((event == EVENT_TEXT) ? new String(mText, 0, mTextLength) : null);
+                }
+                event = nextEvent();
+            }
+        }
+
+        return mFactory.createRelease(versionCode, versionName, changes);
+    }
+
+    /**
+     * Move to the end of the current element, skipping nested elements.
+     */
+    private void skipElement() throws IOException {
+        int depth = 1;
+        while (skipTo('<')) {
+            int markup = readMarkup();
+            if (markup == MARKUP_START_TAG) {
+                if (readAttributes(TAG_OTHER) != '/') {
+                    depth++;
+                }
+            } else if (markup == MARKUP_END_TAG) {
+                depth--;
+                if (depth == 0) {
+                    return;
+                }
+            }
+        }
+
+        throw unexpectedEndOfFile();
+    }
+
+    /**
+     * Read the next event inside a {@code release} element like {@code XmlPullParser.next()}.
+     *
+     * <p>
+     * Comments and processing instructions are skipped. Adjacent text, CDATA sections and
+     * character references are combined into one {@link #EVENT_TEXT} decoded into
+     * {@link #mText}. An empty-element tag produces a start tag followed by an end tag. For tags
+     * {@link #mChangeTag} tells whether it's a {@code change} tag.
+     * </p>
+     */
+    private int nextEvent() throws IOException {
+        if (mPendingEndTag) {
+            mPendingEndTag = false;
+            return EVENT_END_TAG;
+        } else if (mPendingTag) {
+            mPendingTag = false;
+            return readTag();
+        }
+
+        mTextLength = 0;
+        mLastWasCarriageReturn = false;
+        boolean hasText = false;
+
+        while (true) {
+            int c = read();
+            if (c == EOF) {
+                throw unexpectedEndOfFile();
+            } else if (c == '<') {
+                c = read();
+                if (c == '!') {
+                    c = read();
+                    if (c == '[') {
+                        expect(CDATA);
+                        readCdata();
+                        hasText = true;
+                    } else if (c == '-') {
+                        expect('-');
+                        skipPast(END_OF_COMMENT, 3);
+                    } else {
+                        throw new IOException("Unexpected declaration in release element");
+                    }
+                } else if (c == '?') {
+                    skipPast(END_OF_PROCESSING_INSTRUCTION, 2);
+                } else if (c == EOF) {
+                    throw unexpectedEndOfFile();
+                } else {
+                    unread();
+                    if (hasText) {
+                        // Report the text first, the tag is read by the next call
+                        mPendingTag = true;
+                        return EVENT_TEXT;
+                    }
+                    return readTag();
+                }
+            } else if (c == '&') {
+                readEntity();
+                hasText = true;
+            } else {
+                appendByte(c);
+                hasText = true;
+            }
+        }
+    }
+
+    /**
+     * Read a start or end tag following {@code '<'}.
+     */
+    private int readTag() throws IOException {
+        if (read() == '/') {
+            readName();
+            mChangeTag = nameEquals(CHANGE);
+            readAttributes(TAG_OTHER);
+            return EVENT_END_TAG;
+        }
+
+        unread();
+        readName();
+        mChangeTag = nameEquals(CHANGE);
+        mPendingEndTag = readAttributes(TAG_OTHER) == '/';
+        return EVENT_START_TAG;
+    }
+
+    /**
+     * Append the content of a CDATA section to {@link #mText}.
+     */
+    private void readCdata() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == ']') {
+                int brackets = 1;
+                while ((c = read()) == ']') {
+                    brackets++;
+                }
+
+                if (c == '>' && brackets >= 2) {
+                    appendBrackets(brackets - 2);
+                    return;
+                }
+
+                appendBrackets(brackets);
+                if (c == EOF) {
+                    throw unexpectedEndOfFile();
+                }
+                unread();
+            } else if (c == EOF) {
+                throw unexpectedEndOfFile();
+            } else {
+                appendByte(c);
+            }
+        }
+    }
+
+    private void appendBrackets(int count) {
+        for (int i = 0; i < count; i++) {
+            appendChar(']');
+        }
+    }
+
+    /**
+     * Decode an attribute value into {@link #mText}.
+     *
+     * <p>
+     * Like kXML, the parser used with {@link XmlReleaseReader} on Android, only line breaks are
+     * replaced by spaces. Tabs are kept.
+     * </p>
+     */
+    private void readAttributeValue(int quote) throws IOException {
+        mTextLength = 0;
+        mLastWasCarriageReturn = false;
+
+        int c;
+        while ((c = read()) != quote) {
+            if (c == EOF) {
+                throw unexpectedEndOfFile();
+            } else if (c == '&') {
+                readEntity();
+            } else if (c == '\r' || c == '\n') {
+                int length = mTextLength;
+                appendChar((char) c);
+                if (mTextLength > length) {
+                    // Not the '\n' of "\r\n"
+                    mText[length] = ' ';
+                }
+            } else {
+                appendByte(c);
+            }
+        }
+    }
+
+    /**
+     * Decode a character reference following {@code '&'} and append it to {@link #mText}.
+     */
+    private void readEntity() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = read()) != ';') {
+            if (c == EOF || length == mEntity.length) {
+                throw new IOException("Invalid character reference");
+            }
+            mEntity[length++] = (byte) c;
+        }
+
+        if (entityEquals(length, "lt")) {
+            appendChar('<');
+        } else if (entityEquals(length, "gt")) {
+            appendChar('>');
+        } else if (entityEquals(length, "amp")) {
+            appendChar('&');
+        } else if (entityEquals(length, "quot")) {
+            appendChar('"');
+        } else if (entityEquals(length, "apos")) {
+            appendChar('\'');
+        } else if (length > 1 && mEntity[0] == '#') {
+            appendCodePoint(parseCharacterReference(length));
+        } else {
+            throw new IOException("Unknown entity");
+        }
+    }
+
+    private int parseCharacterReference(int length) throws IOException {
+        boolean hex = mEntity[1] == 'x';
+        int start = hex ? 2 : 1;
+        if (start == length) {
+            throw new IOException("Invalid character reference");
+        }
+
+        int codePoint = 0;
+        for (int i = start; i < length; i++) {
+            int digit = Character.digit((char) mEntity[i], hex ? 16 : 10);
+            if (digit == -1) {
+                throw new IOException("Invalid character reference");
+            }
+            codePoint = codePoint * (hex ? 16 : 10) + digit;
+            if (codePoint > Character.MAX_CODE_POINT) {
+                throw new IOException("Invalid character reference");
+            }
+        }
+
+        return codePoint;
+    }
+
+    private boolean entityEquals(int length, String name) {
+        if (length != name.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (mEntity[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decode a UTF-8 sequence starting with {@code b} and append it to {@link #mText}.
+     */
+    private void appendByte(int b) throws IOException {
+        if (b < 0x80) {
+            appendChar((char) b);
+            return;
+        }
+
+        int count;
+        int codePoint;
+        if ((b & 0xE0) == 0xC0) {
+            count = 1;
+            codePoint = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            count = 2;
+            codePoint = b & 0x0F;
+        } else if ((b & 0xF8) == 0xF0) {
+            count = 3;
+            codePoint = b & 0x07;
+        } else {
+            appendChar(REPLACEMENT_CHARACTER);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int c = read();
+            if ((c & 0xC0) != 0x80) {
+                // Malformed sequence. Also covers EOF (-1 & 0xC0 == 0xC0).
+                if (c != EOF) {
+                    unread();
+                }
+                appendChar(REPLACEMENT_CHARACTER);
+                return;
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+
+        appendCodePoint(codePoint);
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            codePoint -= Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            appendChar((char) (Character.MIN_HIGH_SURROGATE + (codePoint >>> 10)));
+            appendChar((char) (Character.MIN_LOW_SURROGATE + (codePoint & 0x3FF)));
+        } else {
+            appendChar((char) codePoint);
+        }
+    }
+
+    /**
+     * Append a character to {@link #mText}, normalizing line breaks to {@code '\n'}.
+     */
+    private void appendChar(char c) {
+        boolean lastWasCarriageReturn = mLastWasCarriageReturn;
+        mLastWasCarriageReturn = (c == '\r');
+        if (c == '\n' && lastWasCarriageReturn) {
+            return;
+        }
+
+        mText = ensureCapacity(mText, mTextLength + 1);
+        mText[mTextLength++] = (c == '\r') ? '\n' : c;
+    }
+
+    private boolean textEqualsIgnoreCase(String value) {
+        if (mTextLength != value.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < mTextLength; i++) {
+            if (Character.toUpperCase(mText[i]) != value.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read a tag or attribute name into {@link #mName}.
+     */
+    private void readName() throws IOException {
+        mNameLength = 0;
+
+        int c = read();
+        while (c != EOF && c != '>' && c != '/' && c != '=' && c != '?' && !isWhitespace(c)) {
+            if (mNameLength == mName.length) {
+                byte[] name = new byte[mNameLength * 2];
+                System.arraycopy(mName, 0, name, 0, mNameLength);
+                mName = name;
+            }
+            mName[mNameLength++] = (byte) c;
+            c = read();
+        }
+
+        if (c != EOF) {
+            unread();
+        }
+    }
+
+    private boolean nameEquals(byte[] name) {
+        if (mNameLength != name.length) {
+            return false;
+        }
+
+        for (int i = 0; i < mNameLength; i++) {
+            if (mName[i] != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Skip bytes until the last {@code length} bytes read equal {@code terminator}.
+     */
+    private void skipPast(int terminator, int length) throws IOException {
+        int mask = (1 << (length * 8)) - 1;
+        int window = 0;
+        int count = 0;
+        while (count < length || (window & mask) != terminator) {
+            int c = read();
+            if (c == EOF) {
+                throw unexpectedEndOfFile();
+            }
+            window = (window << 8) | c;
+            count++;
+        }
+    }
+
+    private void expect(int expected) throws IOException {
+        int c = read();
+        if (c != expected) {
+            throw (c == EOF) ? unexpectedEndOfFile() :
+                    new IOException("Expected '" + (char) expected + "'");
+        }
+    }
+
+    private void expect(byte[] expected) throws IOException {
+        for (byte b : expected) {
+            expect(b);
+        }
+    }
+
+    /**
+     * Skip bytes up to and including {@code c}.
+     *
+     * @return {@code false} if the end of the file was reached.
+     */
+    private boolean skipTo(int c) throws IOException {
+        while (true) {
+            for (int i = mPosition; i < mLimit; i++) {
+                if (mBuffer[i] == c) {
+                    mPosition = i + 1;
+                    return true;
+                }
+            }
+
+            mPosition = mLimit;
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skip whitespace.
+     *
+     * @return The first byte that isn't whitespace or {@link #EOF}.
+     */
+    private int skipWhitespace() throws IOException {
+        int c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return EOF;
+        }
+
+        return mBuffer[mPosition++] & 0xFF;
+    }
+
+    /**
+     * Step back one byte. Only valid directly after {@link #read()} returned a byte.
+     */
+    private void unread() {
+        mPosition--;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = mIn.read(mBuffer, 0, mBuffer.length);
+        } while (read == 0);
+
+        if (read == -1) {
+            return false;
+        }
+
+        mPosition = 0;
+        mLimit = read;
+        return true;
+    }
+
+    /**
+     * Make sure at least {@code count} bytes are buffered, unless the end of the file is reached.
+     * Only used at the beginning of the file.
+     */
+    private void fillAtLeast(int count) throws IOException {
+        if (mPosition > 0) {
+            System.arraycopy(mBuffer, mPosition, mBuffer, 0, mLimit - mPosition);
+            mLimit -= mPosition;
+            mPosition = 0;
+        }
+
+        while (mLimit < count && mLimit < mBuffer.length) {
+            int read = mIn.read(mBuffer, mLimit, mBuffer.length - mLimit);
+            if (read == -1) {
+                return;
+            }
+            mLimit += read;
+        }
+    }
+
+    private static char[] ensureCapacity(char[] array, int capacity) {
+        if (capacity <= array.length) {
+            return array;
+        }
+
+        char[] newArray = new char[Math.max(capacity, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static IOException unexpectedEndOfFile() {
+        return new IOException("Unexpected end of file");
+    }
+
+    private static byte[] bytes(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+
+        return bytes;
+    }
+}
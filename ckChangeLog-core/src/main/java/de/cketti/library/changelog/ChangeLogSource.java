@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+
+/**
+ * A change log XML file that isn't an Android resource, e.g. an asset or a downloaded file.
+ *
+ * <p>
+ * The data is parsed while it is read, so reading stops as soon as the requested releases have
+ * been found. Gzip-compressed data is detected and decompressed automatically.
+ * </p>
+ *
+ * <p>
+ * Readers created by {@link #newReader(Release.Factory, int, int)} use a
+ * {@link ChangeLogScanner} for files encoded as UTF-8, which is a lot faster than an
+ * {@code XmlPullParser}. Other encodings are read by an {@link XmlReleaseReader}.
+ * </p>
+ *
+ * <p>
+ * Subclasses implement {@link #openStream()}. Use {@link #fromInputStream(InputStream)} and
+ * {@link #fromFile(File)} for the common cases.
+ * </p>
+ */
+public abstract class ChangeLogSource {
+    private static final int GZIP_MAGIC_1 = 0x1F;
+    private static final int GZIP_MAGIC_2 = 0x8B;
+
+    private static XmlPullParserFactory sParserFactory;
+
+
+    /**
+     * Create a source reading from an {@code InputStream}.
+     *
+     * <p>
+     * The source can only be opened once. The stream is closed when the {@link Input} is closed.
+     * </p>
+     */
+    public static ChangeLogSource fromInputStream(final InputStream in) {
+        return new ChangeLogSource() {
+            private boolean mOpened = false;
+
+            @Override
+            protected synchronized InputStream openStream() throws IOException {
+                if (mOpened) {
+                    throw new IOException("InputStream source can only be opened once");
+                }
+                mOpened = true;
+
+                return in;
+            }
+        };
+    }
+
+    /**
+     * Create a source reading from a file using a memory-mapped buffer.
+     *
+     * <p>
+     * Only the parts of the file that are actually parsed are loaded into memory.
+     * </p>
+     */
+    public static ChangeLogSource fromFile(final File file) {
+        return new ChangeLogSource() {
+            @Override
+            protected InputStream openStream() throws IOException {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    FileChannel channel = in.getChannel();
+                    return map(channel, 0, channel.size());
+                } finally {
+                    // The mapping stays valid after the channel has been closed
+                    in.close();
+                }
+            }
+
+            @Override
+            public String toString() {
+                return file.toString();
+            }
+        };
+    }
+
+    /**
+     * Map a region of a file into memory and return a stream reading from it.
+     *
+     * <p>
+     * The mapping stays valid after {@code channel} has been closed. It is released when the
+     * returned stream is garbage collected.
+     * </p>
+     */
+    protected static InputStream map(FileChannel channel, long position, long size)
+            throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * Open a stream containing the change log XML file, optionally gzip-compressed.
+     */
+    protected abstract InputStream openStream() throws IOException;
+
+    /**
+     * Open this source for parsing.
+     *
+     * @return An {@link Input} providing the parser. It needs to be closed by the caller.
+     */
+    public final Input open() throws IOException {
+        return openParser(decompressIfNecessary(openStream()));
+    }
+
+    private static Input openParser(InputStream in) throws IOException {
+        try {
+            XmlPullParser parser = newPullParser();
+            parser.setInput(in, null);
+            return new Input(parser, in);
+        } catch (XmlPullParserException e) {
+            in.close();
+            IOException exception = new IOException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * Create a reader returning the releases of this source one at a time.
+     *
+     * <p>
+     * The source is opened on the first call to {@link ReleaseReader#next()} and closed by
+     * {@link ReleaseReader#close()}.
+     * </p>
+     *
+     * @param factory
+     *         Used to create the returned releases.
+     * @param newerThan
+     *         Only releases with a version code higher than this are returned.
+     *         {@link ReleaseReader#ALL_VERSIONS} returns all releases.
+     * @param maxVersionCode
+     *         Only releases with a version code lower than or equal to this are returned.
+     */
+    public final <T extends Release> ReleaseReader<T> newReader(Release.Factory<T> factory,
+            int newerThan, int maxVersionCode) {
+        return new SourceReleaseReader<T>(this, factory, newerThan, maxVersionCode);
+    }
+
+    private static InputStream decompressIfNecessary(InputStream in) throws IOException {
+        InputStream stream = in.markSupported() ? in : new BufferedInputStream(in);
+
+        stream.mark(2);
+        int magic1 = stream.read();
+        int magic2 = stream.read();
+        stream.reset();
+
+        // The stream needs to support mark() for canScan()
+        return (magic1 == GZIP_MAGIC_1 && magic2 == GZIP_MAGIC_2) ?
+                new BufferedInputStream(new GZIPInputStream(stream)) : stream;
+    }
+
+    /**
+     * Check whether the stream can be read by a {@link ChangeLogScanner} without consuming any
+     * data.
+     */
+    private static boolean canScan(InputStream in) throws IOException {
+        byte[] header = new byte[ChangeLogScanner.HEADER_SIZE];
+        in.mark(header.length);
+
+        int length = 0;
+        int read;
+        while (length < header.length &&
+                (read = in.read(header, length, header.length - length)) != -1) {
+            length += read;
+        }
+        in.reset();
+
+        return ChangeLogScanner.canScan(header, length);
+    }
+
+    private static XmlPullParser newPullParser() throws XmlPullParserException {
+        XmlPullParserFactory factory;
+        synchronized (ChangeLogSource.class) {
+            if (sParserFactory == null) {
+                sParserFactory = XmlPullParserFactory.newInstance();
+            }
+            factory = sParserFactory;
+        }
+
+        return factory.newPullParser();
+    }
+
+
+    /**
+     * An opened {@link ChangeLogSource}.
+     */
+    public static final class Input implements Closeable {
+        private final XmlPullParser mParser;
+        private final InputStream mInputStream;
+
+
+        Input(XmlPullParser parser, InputStream inputStream) {
+            mParser = parser;
+            mInputStream = inputStream;
+        }
+
+        /**
+         * Get the parser reading the change log.
+         */
+        public XmlPullParser getParser() {
+            return mParser;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mInputStream.close();
+        }
+    }
+
+    private static final class SourceReleaseReader<T extends Release> implements ReleaseReader<T> {
+        private final ChangeLogSource mSource;
+        private final Release.Factory<T> mFactory;
+        private final int mNewerThan;
+        private final int mMaxVersionCode;
+        private InputStream mInputStream;
+        private ReleaseReader<T> mReader;
+        private boolean mClosed = false;
+
+
+        SourceReleaseReader(ChangeLogSource source, Release.Factory<T> factory, int newerThan,
+                int maxVersionCode) {
+            mSource = source;
+            mFactory = factory;
+            mNewerThan = newerThan;
+            mMaxVersionCode = maxVersionCode;
+        }
+
+        @Override
+        public T next() throws IOException {
+            if (mClosed) {
+                return null;
+            }
+
+            if (mReader == null) {
+                mInputStream = decompressIfNecessary(mSource.openStream());
+                if (canScan(mInputStream)) {
+                    mReader = new ChangeLogScanner<T>(mInputStream, mFactory, mNewerThan,
+                            mMaxVersionCode);
+                } else {
+                    Input input = openParser(mInputStream);
+                    mReader = new XmlReleaseReader<T>(input.getParser(), mFactory, mNewerThan,
+                            mMaxVersionCode);
+                }
+            }
+
+            return mReader.next();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mClosed = true;
+            if (mInputStream != null) {
+                mInputStream.close();
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer mBuffer;
+
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? (mBuffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+
+            int remaining = mBuffer.remaining();
+            if (remaining == 0) {
+                return -1;
+            }
+
+            int count = Math.min(length, remaining);
+            mBuffer.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            int skipped = (int) Math.min(Math.max(count, 0), mBuffer.remaining());
+            mBuffer.position(mBuffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mBuffer.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            mBuffer.reset();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Combines the change logs of several independent sources, e.g. feature modules, while reading
+ * them.
+ *
+ * <p>
+ * This is a k-way merge by version code. All sources need to list the latest version first. In
+ * each step the highest version code of the next releases of all sources is returned. If several
+ * sources contain a release with that version code, the changes are combined into one release in
+ * the order of the sources. The version name is taken from the first source that has one. A
+ * release found in only one source is returned without copying.
+ * </p>
+ *
+ * @param <T>
+ *         The type of release returned by this reader.
+ */
+final class CombiningReleaseReader<T extends Release> implements ReleaseReader<T> {
+    private final List<ReleaseReader<T>> mReaders;
+    private final Release.Factory<T> mFactory;
+
+    /**
+     * The next release of each source or {@code null} if the source has no more releases.
+     */
+    private final List<T> mNext;
+    private boolean mStarted = false;
+
+
+    /**
+     * Create a {@code CombiningReleaseReader} instance.
+     *
+     * @param readers
+     *         The sources, in the order their changes are combined.
+     * @param factory
+     *         Used to create releases combining the changes of several sources.
+     */
+    CombiningReleaseReader(List<? extends ReleaseReader<T>> readers, Release.Factory<T> factory) {
+        mReaders = new ArrayList<ReleaseReader<T>>(readers);
+        mFactory = factory;
+        mNext = new ArrayList<T>(readers.size());
+    }
+
+    @Override
+    public T next() throws IOException {
+        int count = mReaders.size();
+        if (!mStarted) {
+            for (int i = 0; i < count; i++) {
+                mNext.add(mReaders.get(i).next());
+            }
+            mStarted = true;
+        }
+
+        // The number of sources is small, so a linear scan is cheaper than maintaining a heap
+        T first = null;
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            T release = mNext.get(i);
+            if (release == null) {
+                continue;
+            }
+
+            if (first == null || release.versionCode > first.versionCode) {
+                first = release;
+                matches = 1;
+            } else if (release.versionCode == first.versionCode) {
+                matches++;
+            }
+        }
+
+        if (first == null) {
+            return null;
+        }
+
+        int versionCode = first.versionCode;
+        String versionName = null;
+        List<String> changes = (matches == 1) ? null : new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            T release = mNext.get(i);
+            if (release == null || release.versionCode != versionCode) {
+                continue;
+            }
+
+            if (changes != null) {
+                if (versionName == null) {
+                    versionName = release.versionName;
+                }
+                changes.addAll(release.changes);
+            }
+            mNext.set(i, mReaders.get(i).next());
+        }
+
+        return (changes == null) ?
+                first : mFactory.createRelease(versionCode, versionName, changes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Close all readers even if one of them throws
+        IOException exception = null;
+        for (ReleaseReader<T> reader : mReaders) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
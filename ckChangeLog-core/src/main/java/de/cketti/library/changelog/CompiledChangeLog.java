@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.zip.Checksum;
+
+
+/**
+ * Reader for change logs that were compiled at build time by {@code changelog-index.gradle}.
+ *
+ * <p>
+ * File format (all integers are big-endian):
+ * </p>
+ * <pre>
+ * header:        int magic ("CKCL"), short format version, short flags,
+ *                int release count, int change count, int string pool size
+ * release table: per release: int version code, int version name offset, int index of first
+ *                change, int number of changes (sorted by version code, latest version first)
+ * change table:  per change: int string offset
+ * string pool:   per string: int length in bytes, UTF-8 encoded bytes
+ * </pre>
+ *
+ * <p>
+ * String offsets are relative to the start of the string pool. An offset of {@code -1} denotes
+ * a {@code null} string.
+ * </p>
+ */
+final class CompiledChangeLog {
+    /**
+     * Magic number at the start of every compiled change log ({@code "CKCL"}).
+     */
+    static final int MAGIC = 0x434B434C;
+
+    /**
+     * Version of the file format this class is able to read.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int RELEASE_ENTRY_SIZE = 16;
+    private static final int CHANGE_ENTRY_SIZE = 4;
+    private static final int NO_STRING = -1;
+
+    /**
+     * Maximum number of releases whose changes are kept in {@link #mExpandedChanges}.
+     */
+    private static final int MAX_EXPANDED_RELEASES = 32;
+
+
+    private final ByteBuffer mBuffer;
+    private final int mReleaseCount;
+    private final int mChangeTableOffset;
+    private final int mStringPoolOffset;
+
+    /**
+     * Decoded changes of the most recently accessed lazy releases, keyed by release index.
+     *
+     * @see #getLazyRelease(int, Release.Factory)
+     */
+    private final Map<Integer, String[]> mExpandedChanges =
+            new LinkedHashMap<Integer, String[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+                    return size() > MAX_EXPANDED_RELEASES;
+                }
+            };
+
+
+    /**
+     * Read a compiled change log.
+     *
+     * @param in
+     *         The stream to read the compiled change log from. It will not be closed by this
+     *         method.
+     *
+     * @return The compiled change log, or {@code null} if {@code in} was empty, i.e. there is no
+     *         compiled version of the change log.
+     *
+     * @throws IOException
+     *         If the stream couldn't be read or doesn't contain a valid compiled change log.
+     */
+    static CompiledChangeLog read(InputStream in) throws IOException {
+        byte[] data = readFully(in);
+        if (data.length == 0) {
+            return null;
+        }
+
+        return new CompiledChangeLog(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Read the version code of the latest release without reading the whole compiled change log.
+     *
+     * @param in
+     *         The stream to read the compiled change log from. It will not be closed by this
+     *         method.
+     *
+     * @return The version code of the latest release, {@link Integer#MIN_VALUE} if the change log
+     *         contains no releases, or {@code null} if {@code in} was empty, i.e. there is no
+     *         compiled version of the change log.
+     *
+     * @throws IOException
+     *         If the stream couldn't be read or doesn't contain a valid compiled change log.
+     */
+    static Integer readLatestVersionCode(InputStream in) throws IOException {
+        // The header followed by the version code of the first entry in the release table
+        byte[] data = new byte[HEADER_SIZE + 4];
+        int length = 0;
+        int read;
+        while (length < data.length && (read = in.read(data, length, data.length - length)) != -1) {
+            length += read;
+        }
+
+        if (length == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        checkHeader(buffer);
+
+        int releaseCount = buffer.getInt(8);
+        if (releaseCount == 0) {
+            return Integer.MIN_VALUE;
+        } else if (length < data.length) {
+            throw new IOException("Compiled change log is corrupt");
+        }
+
+        return buffer.getInt(HEADER_SIZE);
+    }
+
+    private static void checkHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled change log");
+        }
+
+        int formatVersion = buffer.getShort(4);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported compiled change log version: " + formatVersion);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        byte[] buffer = new byte[Math.max(in.available(), 4096)];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, length);
+                buffer = newBuffer;
+            }
+        }
+
+        if (length == buffer.length) {
+            return buffer;
+        }
+
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, 0, data, 0, length);
+        return data;
+    }
+
+    private CompiledChangeLog(ByteBuffer buffer) throws IOException {
+        checkHeader(buffer);
+
+        int releaseCount = buffer.getInt(8);
+        int changeCount = buffer.getInt(12);
+        int stringPoolSize = buffer.getInt(16);
+
+        int changeTableOffset = HEADER_SIZE + releaseCount * RELEASE_ENTRY_SIZE;
+        int stringPoolOffset = changeTableOffset + changeCount * CHANGE_ENTRY_SIZE;
+        if (releaseCount < 0 || changeCount < 0 || stringPoolSize < 0 ||
+                stringPoolOffset + stringPoolSize != buffer.limit()) {
+            throw new IOException("Compiled change log is corrupt");
+        }
+
+        mBuffer = buffer;
+        mReleaseCount = releaseCount;
+        mChangeTableOffset = changeTableOffset;
+        mStringPoolOffset = stringPoolOffset;
+    }
+
+    /**
+     * Get the number of releases in this change log.
+     */
+    int size() {
+        return mReleaseCount;
+    }
+
+    /**
+     * Get the version code of the release at position {@code index}.
+     *
+     * <p>
+     * Releases are sorted by version code, latest version first.
+     * </p>
+     */
+    int getVersionCode(int index) {
+        return mBuffer.getInt(releaseEntryOffset(index));
+    }
+
+    /**
+     * Get the number of releases with a version code higher than {@code versionCode}.
+     *
+     * <p>
+     * Because releases are sorted latest version first, those are the releases at positions
+     * {@code 0} to {@code countNewerThan(versionCode) - 1}.
+     * </p>
+     */
+    int countNewerThan(int versionCode) {
+        int low = 0;
+        int high = mReleaseCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getVersionCode(mid) > versionCode) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Get the position of the release with the given version code.
+     *
+     * @return The position of the release or {@code -1} if there's no such release.
+     */
+    int indexOf(int versionCode) {
+        int index = countNewerThan(versionCode);
+        return (index < mReleaseCount && getVersionCode(index) == versionCode) ? index : -1;
+    }
+
+    /**
+     * Decode the release at position {@code index}.
+     *
+     * @param factory
+     *         Used to create the returned release.
+     */
+    <T extends Release> T getRelease(int index, Release.Factory<T> factory) {
+        int offset = releaseEntryOffset(index);
+        int versionCode = mBuffer.getInt(offset);
+        String versionName = readString(mBuffer.getInt(offset + 4));
+        int firstChange = mBuffer.getInt(offset + 8);
+        int changeCount = mBuffer.getInt(offset + 12);
+
+        List<String> changes = new ArrayList<String>(changeCount);
+        for (int i = firstChange, end = firstChange + changeCount; i < end; i++) {
+            changes.add(readString(mBuffer.getInt(mChangeTableOffset + i * CHANGE_ENTRY_SIZE)));
+        }
+
+        return factory.createRelease(versionCode, versionName, changes);
+    }
+
+    /**
+     * Decode the version code and name of the release at position {@code index}.
+     *
+     * <p>
+     * The changes are decoded when they are first accessed. The decoded changes of the most
+     * recently accessed releases are cached. Changes of other releases are decoded again when
+     * necessary. The returned release keeps a reference to this compiled change log.
+     * </p>
+     *
+     * @param factory
+     *         Used to create the returned release.
+     */
+    <T extends Release> T getLazyRelease(int index, Release.Factory<T> factory) {
+        int offset = releaseEntryOffset(index);
+        int versionCode = mBuffer.getInt(offset);
+        String versionName = readString(mBuffer.getInt(offset + 4));
+        int changeCount = mBuffer.getInt(offset + 12);
+        List<String> changes = new LazyChangeList(index, changeCount);
+
+        return factory.createRelease(versionCode, versionName, changes);
+    }
+
+    /**
+     * Add the releases with a version code lower than or equal to {@code maxVersionCode} to a
+     * checksum.
+     *
+     * <p>
+     * The version codes and the encoded version names and changes are added as they are stored in
+     * the file. Nothing is decoded, so this is a lot cheaper than reading the releases.
+     * </p>
+     */
+    void updateChecksum(Checksum checksum, int maxVersionCode) {
+        for (int index = countNewerThan(maxVersionCode); index < mReleaseCount; index++) {
+            int offset = releaseEntryOffset(index);
+            int firstChange = mBuffer.getInt(offset + 8);
+            int changeCount = mBuffer.getInt(offset + 12);
+
+            updateIntChecksum(checksum, mBuffer.getInt(offset));
+            updateStringChecksum(checksum, mBuffer.getInt(offset + 4));
+            updateIntChecksum(checksum, changeCount);
+            for (int i = firstChange, end = firstChange + changeCount; i < end; i++) {
+                updateStringChecksum(checksum,
+                        mBuffer.getInt(mChangeTableOffset + i * CHANGE_ENTRY_SIZE));
+            }
+        }
+    }
+
+    private void updateStringChecksum(Checksum checksum, int stringOffset) {
+        if (stringOffset == NO_STRING) {
+            updateIntChecksum(checksum, NO_STRING);
+            return;
+        }
+
+        // The length prefix followed by the UTF-8 encoded bytes
+        int offset = mStringPoolOffset + stringOffset;
+        checksum.update(mBuffer.array(), offset, 4 + mBuffer.getInt(offset));
+    }
+
+    private static void updateIntChecksum(Checksum checksum, int value) {
+        checksum.update(value >>> 24);
+        checksum.update(value >>> 16);
+        checksum.update(value >>> 8);
+        checksum.update(value);
+    }
+
+    private String[] readChanges(int index) {
+        int offset = releaseEntryOffset(index);
+        int firstChange = mBuffer.getInt(offset + 8);
+        int changeCount = mBuffer.getInt(offset + 12);
+
+        String[] changes = new String[changeCount];
+        for (int i = 0; i < changeCount; i++) {
+            int changeEntryOffset = mChangeTableOffset + (firstChange + i) * CHANGE_ENTRY_SIZE;
+            changes[i] = readString(mBuffer.getInt(changeEntryOffset));
+        }
+
+        return changes;
+    }
+
+    private String[] getExpandedChanges(int index) {
+        synchronized (mExpandedChanges) {
+            String[] changes = mExpandedChanges.get(index);
+            if (changes == null) {
+                changes = readChanges(index);
+                mExpandedChanges.put(index, changes);
+            }
+
+            return changes;
+        }
+    }
+
+    /**
+     * Create a {@link ReleaseReader} returning the releases of this change log.
+     *
+     * @param factory
+     *         Used to create the returned releases.
+     * @param newerThan
+     *         Only releases with a version code higher than this are returned.
+     *         {@link ReleaseReader#ALL_VERSIONS} returns all releases.
+     * @param maxVersionCode
+     *         Only releases with a version code lower than or equal to this are returned.
+     */
+    <T extends Release> ReleaseReader<T> newReader(final Release.Factory<T> factory,
+            int newerThan, int maxVersionCode) {
+        final int start = countNewerThan(maxVersionCode);
+        final int end = (newerThan == ReleaseReader.ALL_VERSIONS) ?
+                mReleaseCount : countNewerThan(newerThan);
+
+        return new ReleaseReader<T>() {
+            private int mIndex = start;
+
+            @Override
+            public T next() {
+                return (mIndex < end) ? getRelease(mIndex++, factory) : null;
+            }
+
+            @Override
+            public void close() {
+                // Do nothing
+            }
+        };
+    }
+
+    private int releaseEntryOffset(int index) {
+        if (index < 0 || index >= mReleaseCount) {
+            throw new IndexOutOfBoundsException("Invalid release index: " + index);
+        }
+
+        return HEADER_SIZE + index * RELEASE_ENTRY_SIZE;
+    }
+
+    private String readString(int stringOffset) {
+        if (stringOffset == NO_STRING) {
+            return null;
+        }
+
+        int offset = mStringPoolOffset + stringOffset;
+        int length = mBuffer.getInt(offset);
+
+        try {
+            return new String(mBuffer.array(), offset + 4, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /**
+     * Changes of a release that are only decoded when accessed.
+     *
+     * <p>
+     * The number of changes is known up front, so {@link #size()} doesn't decode anything.
+     * </p>
+     */
+    private final class LazyChangeList extends AbstractList<String> implements RandomAccess {
+        private final int mIndex;
+        private final int mSize;
+
+        LazyChangeList(int index, int size) {
+            mIndex = index;
+            mSize = size;
+        }
+
+        @Override
+        public String get(int location) {
+            if (location < 0 || location >= mSize) {
+                throw new IndexOutOfBoundsException("Invalid change index: " + location);
+            }
+
+            return getExpandedChanges(mIndex)[location];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+
+
+/**
+ * Renders a change log as HTML document.
+ *
+ * <p>
+ * The version format string is analyzed once when the renderer is created, so rendering a
+ * release doesn't require {@link String#format(String, Object...)}.
+ * </p>
+ */
+final class HtmlRenderer {
+    private final String mCss;
+
+    /**
+     * The version format if it couldn't be split into prefix and suffix. {@code null} otherwise.
+     */
+    private final String mVersionFormat;
+    private final String mVersionPrefix;
+
+    /**
+     * Text following the version name. {@code null} if the format doesn't contain the version
+     * name.
+     */
+    private final String mVersionSuffix;
+
+
+    /**
+     * Create an {@code HtmlRenderer} instance.
+     *
+     * @param css
+     *         CSS styles used to format the change log.
+     * @param versionFormat
+     *         Format string for the release headings. It's used with the version name as only
+     *         argument.
+     */
+    HtmlRenderer(String css, String versionFormat) {
+        mCss = css;
+
+        StringBuilder prefix = new StringBuilder();
+        StringBuilder suffix = new StringBuilder();
+        boolean argumentFound = false;
+        boolean compiled = true;
+        for (int i = 0, len = versionFormat.length(); i < len && compiled; i++) {
+            char c = versionFormat.charAt(i);
+            StringBuilder target = argumentFound ? suffix : prefix;
+            if (c != '%') {
+                target.append(c);
+            } else if (versionFormat.startsWith("%", i + 1)) {
+                target.append('%');
+                i += 1;
+            } else if (!argumentFound && versionFormat.startsWith("s", i + 1)) {
+                argumentFound = true;
+                i += 1;
+            } else if (!argumentFound && versionFormat.startsWith("1$s", i + 1)) {
+                argumentFound = true;
+                i += 3;
+            } else {
+                // Anything else is left to String.format()
+                compiled = false;
+            }
+        }
+
+        mVersionFormat = compiled ? null : versionFormat;
+        mVersionPrefix = prefix.toString();
+        mVersionSuffix = argumentFound ? suffix.toString() : null;
+    }
+
+    /**
+     * Render a complete HTML document containing the given releases.
+     */
+    void render(Appendable out, Iterable<? extends Release> releases) throws IOException {
+        render(out, releases, null);
+    }
+
+    /**
+     * Render a complete HTML document containing the given releases.
+     *
+     * @param bodySuffix
+     *         Markup that is added to the end of the document's body, e.g. a script. Can be
+     *         {@code null}.
+     */
+    void render(Appendable out, Iterable<? extends Release> releases, String bodySuffix)
+            throws IOException {
+        writeHeader(out);
+        renderReleases(out, releases);
+        if (bodySuffix != null) {
+            out.append(bodySuffix);
+        }
+        writeFooter(out);
+    }
+
+    /**
+     * Render the given releases without the surrounding document.
+     *
+     * <p>
+     * This can be used to add releases to a document created by one of the {@code render()}
+     * methods.
+     * </p>
+     */
+    void renderReleases(Appendable out, Iterable<? extends Release> releases) throws IOException {
+        for (Release release : releases) {
+            writeRelease(out, release);
+        }
+    }
+
+    /**
+     * Render a complete HTML document containing all releases returned by {@code reader}.
+     *
+     * <p>
+     * Only one release is held in memory at a time.
+     * </p>
+     */
+    void render(Appendable out, ReleaseReader<?> reader) throws IOException {
+        writeHeader(out);
+        Release release;
+        while ((release = reader.next()) != null) {
+            writeRelease(out, release);
+        }
+        writeFooter(out);
+    }
+
+    private void writeHeader(Appendable out) throws IOException {
+        out.append("<html><head><style type=\"text/css\">");
+        out.append(mCss);
+        out.append("</style></head><body>");
+    }
+
+    private void writeRelease(Appendable out, Release release) throws IOException {
+        out.append("<h1>");
+        appendVersion(out, release.versionName);
+        out.append("</h1><ul>");
+        for (String change : release.changes) {
+            out.append("<li>");
+            out.append(change);
+            out.append("</li>");
+        }
+        out.append("</ul>");
+    }
+
+    private void writeFooter(Appendable out) throws IOException {
+        out.append("</body></html>");
+    }
+
+    private void appendVersion(Appendable out, String versionName) throws IOException {
+        if (mVersionFormat != null) {
+            out.append(String.format(mVersionFormat, versionName));
+            return;
+        }
+
+        out.append(mVersionPrefix);
+        if (mVersionSuffix != null) {
+            out.append(versionName);
+            out.append(mVersionSuffix);
+        }
+    }
+}
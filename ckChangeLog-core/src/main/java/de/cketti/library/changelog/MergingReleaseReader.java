@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Merges the master change log with one or more localized change logs while reading them.
+ *
+ * <p>
+ * Uses the release information from the first localized change log containing a release and
+ * falls back to the master change log if necessary. Only releases contained in the master change
+ * log are returned. All change logs need to list the latest version first, so they can be merged
+ * in a single pass.
+ * </p>
+ *
+ * @param <T>
+ *         The type of release returned by this reader.
+ */
+final class MergingReleaseReader<T extends Release> implements ReleaseReader<T> {
+    private final ReleaseReader<T> mMaster;
+    private final List<ReleaseReader<T>> mLocalized;
+    private final List<T> mNextLocalized;
+    private boolean mStarted = false;
+
+
+    MergingReleaseReader(ReleaseReader<T> master, ReleaseReader<T> localized) {
+        this(master, Collections.singletonList(localized));
+    }
+
+    /**
+     * Create a {@code MergingReleaseReader} instance.
+     *
+     * @param master
+     *         The master change log.
+     * @param localized
+     *         The localized change logs, in order of preference.
+     */
+    MergingReleaseReader(ReleaseReader<T> master, List<? extends ReleaseReader<T>> localized) {
+        mMaster = master;
+        mLocalized = new ArrayList<ReleaseReader<T>>(localized);
+        mNextLocalized = new ArrayList<T>(localized.size());
+    }
+
+    @Override
+    public T next() throws IOException {
+        T release = mMaster.next();
+        if (release == null) {
+            return null;
+        }
+
+        int count = mLocalized.size();
+        if (!mStarted) {
+            for (int i = 0; i < count; i++) {
+                mNextLocalized.add(mLocalized.get(i).next());
+            }
+            mStarted = true;
+        }
+
+        T result = release;
+        boolean found = false;
+        for (int i = 0; i < count; i++) {
+            ReleaseReader<T> reader = mLocalized.get(i);
+            T nextLocalized = mNextLocalized.get(i);
+
+            // Skip localized releases that are missing from the master change log
+            while (nextLocalized != null && nextLocalized.versionCode > release.versionCode) {
+                nextLocalized = reader.next();
+            }
+
+            if (nextLocalized != null && nextLocalized.versionCode == release.versionCode) {
+                if (!found) {
+                    result = nextLocalized;
+                    found = true;
+                }
+                nextLocalized = reader.next();
+            }
+
+            mNextLocalized.set(i, nextLocalized);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Close all readers even if one of them throws
+        IOException exception = null;
+        try {
+            mMaster.close();
+        } catch (IOException e) {
+            exception = e;
+        }
+
+        for (ReleaseReader<T> reader : mLocalized) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
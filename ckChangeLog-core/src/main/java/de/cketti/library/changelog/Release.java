@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.List;
+
+
+/**
+ * Information about a release/version.
+ *
+ * <p>
+ * This is the Android-independent base class of {@code ChangeLog.ReleaseItem}. Release readers
+ * create instances using a {@link Factory}, so the Android library gets {@code ReleaseItem}s
+ * without copying.
+ * </p>
+ */
+public class Release {
+    /**
+     * Version code of the release.
+     */
+    public final int versionCode;
+
+    /**
+     * Version name of the release.
+     */
+    public final String versionName;
+
+    /**
+     * List of changes introduced with that release.
+     */
+    public final List<String> changes;
+
+
+    protected Release(int versionCode, String versionName, List<String> changes) {
+        this.versionCode = versionCode;
+        this.versionName = versionName;
+        this.changes = changes;
+    }
+
+
+    /**
+     * Creates the {@link Release} instances returned by release readers.
+     *
+     * @param <T>
+     *         The type of release created by this factory.
+     */
+    public interface Factory<T extends Release> {
+        T createRelease(int versionCode, String versionName, List<String> changes);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+
+/**
+ * Merges the master change log with one or more localized change logs held in memory.
+ *
+ * <p>
+ * Each change log is given as an array of version codes and an array of releases, both sorted by
+ * version code, latest version first. This is the merge used by {@code ReleaseIndex.merge()} and
+ * thus by {@code ChangeLog.getChangeLog(boolean)}. {@link MergingReleaseReader} does the same
+ * while reading the change logs.
+ * </p>
+ */
+final class ReleaseMerger {
+    private ReleaseMerger() {
+    }
+
+    /**
+     * Merge the master change log with one or more localized change logs.
+     *
+     * <p>
+     * The result contains all releases of the master change log. The release information from the
+     * first of the localized change logs containing a release is used where available. This is
+     * done in a single pass over all change logs.
+     * </p>
+     *
+     * @param versionCodes
+     *         The version codes of the master change log.
+     * @param master
+     *         The releases of the master change log.
+     * @param localizedVersionCodes
+     *         The version codes of the localized change logs, in order of preference.
+     * @param localized
+     *         The releases of the localized change logs, in the same order.
+     *
+     * @return The releases of the merged change log. The version codes are the same as
+     *         {@code versionCodes}. If none of the localized change logs contain any releases,
+     *         {@code master} is returned.
+     */
+    static <T extends Release> T[] merge(int[] versionCodes, T[] master,
+            int[][] localizedVersionCodes, T[][] localized) {
+        boolean empty = true;
+        for (int[] codes : localizedVersionCodes) {
+            if (codes.length > 0) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            return master;
+        }
+
+        int localizedCount = localized.length;
+        T[] releases = master.clone();
+        int[] positions = new int[localizedCount];
+        for (int i = 0, masterSize = versionCodes.length; i < masterSize; i++) {
+            int versionCode = versionCodes[i];
+            boolean found = false;
+            for (int k = 0; k < localizedCount; k++) {
+                int[] codes = localizedVersionCodes[k];
+                int size = codes.length;
+                int j = positions[k];
+                while (j < size && codes[j] > versionCode) {
+                    j++;
+                }
+
+                if (j < size && codes[j] == versionCode) {
+                    if (!found) {
+                        releases[i] = localized[k][j];
+                        found = true;
+                    }
+                    j++;
+                }
+                positions[k] = j;
+            }
+        }
+
+        return releases;
+    }
+}
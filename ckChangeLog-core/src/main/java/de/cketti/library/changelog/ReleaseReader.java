@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Reads the releases of a change log one at a time, latest version first.
+ *
+ * <p>
+ * Unlike {@code ChangeLog.getChangeLog(boolean)} this doesn't require the whole change log to be
+ * held in memory.
+ * </p>
+ *
+ * @param <T>
+ *         The type of release returned by this reader.
+ */
+public interface ReleaseReader<T extends Release> extends Closeable {
+    /**
+     * Value for the {@code newerThan} arguments of release readers that stands for the full change
+     * log.
+     */
+    int ALL_VERSIONS = Integer.MIN_VALUE;
+
+    /**
+     * Read the next release.
+     *
+     * @return The next release or {@code null} if there are no more releases.
+     *
+     * @throws IOException
+     *         If the change log couldn't be read.
+     */
+    T next() throws IOException;
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Inverted index over the change texts of a change log.
+ *
+ * <p>
+ * Change texts are split into tokens, i.e. runs of letters and digits, ignoring case and HTML
+ * tags. For each token the index stores the changes containing it. A query matches a change if
+ * every token of the query is a prefix of a token of the change, so the index can be used for
+ * search-as-you-type.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads. Use {@link #update(List)} to add new
+ * releases to an existing index without tokenizing the older releases again.
+ * </p>
+ */
+public final class SearchIndex {
+    private static final int MAGIC = 0x636B5349;
+    // Also incremented when the tokenizer changes, so persisted indexes are rebuilt
+    private static final int FORMAT_VERSION = 2;
+    private static final long CHANGE_INDEX_MASK = 0xFFFFFFFFL;
+
+
+    /**
+     * Tokens in ascending order.
+     */
+    private final String[] mTokens;
+
+    /**
+     * For each token the matching changes, encoded by {@link #encodeMatch(int, int)} and sorted in
+     * ascending order.
+     */
+    private final long[][] mPostings;
+
+    /**
+     * Version codes of the indexed releases in ascending order.
+     */
+    private final int[] mVersionCodes;
+
+    /**
+     * Content hashes of the indexed releases, see {@link #computeHash(Release)}.
+     */
+    private final int[] mHashes;
+
+
+    private SearchIndex(String[] tokens, long[][] postings, int[] versionCodes, int[] hashes) {
+        mTokens = tokens;
+        mPostings = postings;
+        mVersionCodes = versionCodes;
+        mHashes = hashes;
+    }
+
+    /**
+     * Create an index of the changes of the supplied releases.
+     *
+     * @param releases
+     *         The releases to index. Version codes must be unique.
+     */
+    public static SearchIndex build(List<? extends Release> releases) {
+        return new Builder(releases.size()).addReleases(releases).build();
+    }
+
+    /**
+     * Get an index of the supplied releases, reusing this index where possible.
+     *
+     * <p>
+     * Releases that are already indexed and haven't changed are not tokenized again. If all
+     * indexed releases are still present and unchanged, only the new releases are added. If a
+     * release was modified or removed, the index is rebuilt.
+     * </p>
+     *
+     * @param releases
+     *         The releases to index. Version codes must be unique.
+     *
+     * @return This instance if nothing changed. A new index otherwise.
+     */
+    public SearchIndex update(List<? extends Release> releases) {
+        List<Release> newReleases = new ArrayList<Release>();
+        int unchanged = 0;
+        for (Release release : releases) {
+            int index = Arrays.binarySearch(mVersionCodes, release.versionCode);
+            if (index < 0) {
+                newReleases.add(release);
+            } else if (mHashes[index] == computeHash(release)) {
+                unchanged++;
+            } else {
+                return build(releases);
+            }
+        }
+
+        if (unchanged != mVersionCodes.length) {
+            // Releases were removed from the change log
+            return build(releases);
+        } else if (newReleases.isEmpty()) {
+            return this;
+        }
+
+        return new Builder(this, newReleases.size()).addReleases(newReleases).build();
+    }
+
+    /**
+     * Find the changes matching a query.
+     *
+     * @param query
+     *         The text entered by the user. Every token of the query has to be a prefix of a token
+     *         of a matching change.
+     *
+     * @return The matching changes, latest version first. Changes of the same release are in the
+     *         order they appear in the change log. The list is empty if the query contains no
+     *         tokens.
+     */
+    public List<Match> search(String query) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long[] result = null;
+        for (String queryToken : queryTokens) {
+            long[] matches = findPrefix(queryToken);
+            result = (result == null) ? matches : intersect(result, matches);
+            if (result.length == 0) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<Match> matches = new ArrayList<Match>(result.length);
+        for (int i = result.length - 1; i >= 0; i--) {
+            long match = result[i];
+            int versionCode = (int) (match >> 32);
+            int changeIndex = (int) (CHANGE_INDEX_MASK - (match & CHANGE_INDEX_MASK));
+            matches.add(new Match(versionCode, changeIndex));
+        }
+
+        return matches;
+    }
+
+    /**
+     * Get the number of indexed releases.
+     */
+    public int getReleaseCount() {
+        return mVersionCodes.length;
+    }
+
+    /**
+     * Get the number of distinct tokens in the index.
+     */
+    public int getTokenCount() {
+        return mTokens.length;
+    }
+
+    /**
+     * Collect the changes of all tokens starting with {@code prefix}.
+     *
+     * @return The encoded matches in ascending order without duplicates.
+     */
+    private long[] findPrefix(String prefix) {
+        int start = Arrays.binarySearch(mTokens, prefix);
+        if (start < 0) {
+            start = -start - 1;
+        }
+
+        int end = start;
+        while (end < mTokens.length && mTokens[end].startsWith(prefix)) {
+            end++;
+        }
+
+        if (end - start == 1) {
+            return mPostings[start];
+        }
+
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            count += mPostings[i].length;
+        }
+
+        long[] matches = new long[count];
+        int offset = 0;
+        for (int i = start; i < end; i++) {
+            long[] postings = mPostings[i];
+            System.arraycopy(postings, 0, matches, offset, postings.length);
+            offset += postings.length;
+        }
+
+        return sortUnique(matches, count);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return (count == result.length) ? result : copyOf(result, count);
+    }
+
+    private static long[] sortUnique(long[] values, int length) {
+        Arrays.sort(values, 0, length);
+
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (count == 0 || values[count - 1] != values[i]) {
+                values[count++] = values[i];
+            }
+        }
+
+        return (count == values.length) ? values : copyOf(values, count);
+    }
+
+    // Arrays.copyOf() is not available before API 9
+    private static long[] copyOf(long[] values, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(values, 0, copy, 0, Math.min(values.length, length));
+        return copy;
+    }
+
+    /**
+     * Encode a match so that sorting in ascending order and then reading the values backwards
+     * yields the latest version first and the changes of a release in their original order.
+     */
+    private static long encodeMatch(int versionCode, int changeIndex) {
+        return ((long) versionCode << 32) | (CHANGE_INDEX_MASK - changeIndex);
+    }
+
+    /**
+     * Compute a hash of the changes of a release.
+     *
+     * <p>
+     * Used by {@link #update(List)} to detect modified releases.
+     * </p>
+     */
+    private static int computeHash(Release release) {
+        int hash = 1;
+        for (String change : release.changes) {
+            hash = 31 * hash + (change == null ? 0 : change.hashCode());
+        }
+
+        return hash;
+    }
+
+    /**
+     * Split a text into lower case tokens.
+     *
+     * <p>
+     * A token is a run of letters and digits. HTML tags and entities are skipped. A {@code <} only
+     * starts a tag if it is followed by a letter or {@code /}, so text like {@code a < b} is
+     * tokenized as text.
+     * </p>
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        if (text == null) {
+            return tokens;
+        }
+
+        StringBuilder token = new StringBuilder();
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+                continue;
+            }
+
+            if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+
+            if (c == '<' && isTagStart(text, i + 1)) {
+                int end = text.indexOf('>', i);
+                if (end != -1) {
+                    i = end;
+                }
+            } else if (c == '&') {
+                int end = text.indexOf(';', i);
+                if (end != -1 && end - i <= 10) {
+                    i = end;
+                }
+            }
+        }
+
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+
+        return tokens;
+    }
+
+    private static boolean isTagStart(String text, int index) {
+        if (index >= text.length()) {
+            return false;
+        }
+
+        char c = text.charAt(index);
+        return c == '/' || Character.isLetter(c);
+    }
+
+    /**
+     * Write this index to a stream.
+     *
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+
+        out.writeInt(mVersionCodes.length);
+        for (int i = 0; i < mVersionCodes.length; i++) {
+            out.writeInt(mVersionCodes[i]);
+            out.writeInt(mHashes[i]);
+        }
+
+        out.writeInt(mTokens.length);
+        for (int i = 0; i < mTokens.length; i++) {
+            out.writeUTF(mTokens[i]);
+
+            long[] postings = mPostings[i];
+            out.writeInt(postings.length);
+            for (long posting : postings) {
+                out.writeLong(posting);
+            }
+        }
+    }
+
+    /**
+     * Read an index written by {@link #writeTo(DataOutput)}.
+     *
+     * @throws IOException
+     *         If the data couldn't be read or is not a valid index.
+     */
+    public static SearchIndex readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported search index format");
+        }
+
+        int releaseCount = checkCount(in.readInt());
+        int[] versionCodes = new int[releaseCount];
+        int[] hashes = new int[releaseCount];
+        for (int i = 0; i < releaseCount; i++) {
+            versionCodes[i] = in.readInt();
+            hashes[i] = in.readInt();
+            if (i > 0 && versionCodes[i] <= versionCodes[i - 1]) {
+                throw new IOException("Version codes not in ascending order");
+            }
+        }
+
+        int tokenCount = checkCount(in.readInt());
+        String[] tokens = new String[tokenCount];
+        long[][] postings = new long[tokenCount][];
+        for (int i = 0; i < tokenCount; i++) {
+            tokens[i] = in.readUTF();
+            if (i > 0 && tokens[i].compareTo(tokens[i - 1]) <= 0) {
+                throw new IOException("Tokens not in ascending order");
+            }
+
+            long[] tokenPostings = new long[checkCount(in.readInt())];
+            for (int j = 0; j < tokenPostings.length; j++) {
+                tokenPostings[j] = in.readLong();
+            }
+            postings[i] = tokenPostings;
+        }
+
+        return new SearchIndex(tokens, postings, versionCodes, hashes);
+    }
+
+    private static int checkCount(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Invalid count: " + count);
+        }
+
+        return count;
+    }
+
+
+    /**
+     * A change matching a search query.
+     */
+    public static final class Match {
+        /**
+         * Version code of the release containing the change.
+         */
+        public final int versionCode;
+
+        /**
+         * Index of the change in {@link Release#changes}.
+         */
+        public final int changeIndex;
+
+        Match(int versionCode, int changeIndex) {
+            this.versionCode = versionCode;
+            this.changeIndex = changeIndex;
+        }
+    }
+
+    /**
+     * Collects the postings of releases before they are sorted into a {@link SearchIndex}.
+     */
+    private static final class Builder {
+        private final Map<String, LongList> mPostings;
+        private final List<Release> mReleases;
+        private final SearchIndex mBase;
+
+        Builder(int releaseCount) {
+            this(null, releaseCount);
+        }
+
+        Builder(SearchIndex base, int releaseCount) {
+            mBase = base;
+            mPostings = new HashMap<String, LongList>();
+            mReleases = new ArrayList<Release>(releaseCount);
+        }
+
+        Builder addReleases(List<? extends Release> releases) {
+            for (Release release : releases) {
+                mReleases.add(release);
+
+                List<String> changes = release.changes;
+                int changeCount = changes.size();
+                for (int i = 0; i < changeCount; i++) {
+                    long match = encodeMatch(release.versionCode, i);
+                    for (String token : tokenize(changes.get(i))) {
+                        LongList postings = mPostings.get(token);
+                        if (postings == null) {
+                            postings = new LongList();
+                            mPostings.put(token, postings);
+                        }
+                        postings.addUnique(match);
+                    }
+                }
+            }
+
+            return this;
+        }
+
+        SearchIndex build() {
+            int baseReleaseCount = (mBase == null) ? 0 : mBase.mVersionCodes.length;
+            int releaseCount = baseReleaseCount + mReleases.size();
+            long[] releases = new long[releaseCount];
+            for (int i = 0; i < baseReleaseCount; i++) {
+                releases[i] = ((long) mBase.mVersionCodes[i] << 32) |
+                        (mBase.mHashes[i] & CHANGE_INDEX_MASK);
+            }
+            for (int i = 0; i < mReleases.size(); i++) {
+                Release release = mReleases.get(i);
+                releases[baseReleaseCount + i] = ((long) release.versionCode << 32) |
+                        (computeHash(release) & CHANGE_INDEX_MASK);
+            }
+            Arrays.sort(releases);
+
+            int[] versionCodes = new int[releaseCount];
+            int[] hashes = new int[releaseCount];
+            for (int i = 0; i < releaseCount; i++) {
+                versionCodes[i] = (int) (releases[i] >> 32);
+                hashes[i] = (int) releases[i];
+                if (i > 0 && versionCodes[i] == versionCodes[i - 1]) {
+                    throw new IllegalArgumentException("Duplicate version code: " +
+                            versionCodes[i]);
+                }
+            }
+
+            // Add the tokens of the base index so the merge below is a single pass
+            if (mBase != null) {
+                for (String token : mBase.mTokens) {
+                    if (!mPostings.containsKey(token)) {
+                        mPostings.put(token, new LongList());
+                    }
+                }
+            }
+
+            String[] tokens = mPostings.keySet().toArray(new String[mPostings.size()]);
+            Arrays.sort(tokens);
+
+            long[][] postings = new long[tokens.length][];
+            int baseIndex = 0;
+            for (int i = 0; i < tokens.length; i++) {
+                LongList list = mPostings.get(tokens[i]);
+                if (mBase != null && baseIndex < mBase.mTokens.length &&
+                        mBase.mTokens[baseIndex].equals(tokens[i])) {
+                    list.addAll(mBase.mPostings[baseIndex]);
+                    baseIndex++;
+                }
+                postings[i] = list.toSortedArray();
+            }
+
+            return new SearchIndex(tokens, postings, versionCodes, hashes);
+        }
+    }
+
+    /**
+     * Growable array of {@code long} values.
+     */
+    private static final class LongList {
+        private long[] mValues = new long[4];
+        private int mSize;
+
+        void addUnique(long value) {
+            // Changes are added in order, so duplicates are always adjacent
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            ensureCapacity(mSize + 1);
+            mValues[mSize++] = value;
+        }
+
+        void addAll(long[] values) {
+            ensureCapacity(mSize + values.length);
+            System.arraycopy(values, 0, mValues, mSize, values.length);
+            mSize += values.length;
+        }
+
+        long[] toSortedArray() {
+            return sortUnique(mValues, mSize);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > mValues.length) {
+                mValues = copyOf(mValues, Math.max(capacity, mValues.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+/**
+ * Compact storage for change texts.
+ *
+ * <p>
+ * All strings are stored in a single {@code char} array. A string is referenced by an ID that
+ * indexes a table of offsets and lengths. Adding a string that is already stored returns the ID
+ * of the existing copy, so identical texts (e.g. in the master and the localized change log) are
+ * only stored once. The hash table used to find existing copies only contains IDs, so no
+ * {@code String} instances are retained.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class StringArena {
+    /**
+     * ID of {@code null}.
+     */
+    private static final int NULL_ID = -1;
+
+    /**
+     * Marks an unused slot of {@link #mHashTable}.
+     */
+    private static final int EMPTY_SLOT = -1;
+
+
+    private char[] mChars = new char[1024];
+    private int mCharCount = 0;
+
+    /**
+     * Offset and length of every string, i.e. string {@code id} starts at
+     * {@code mStrings[2 * id]} and has a length of {@code mStrings[2 * id + 1]}.
+     */
+    private int[] mStrings = new int[64];
+    private int mStringCount = 0;
+
+    /**
+     * Open addressing hash table containing the IDs of all strings.
+     */
+    private int[] mHashTable = newHashTable(64);
+
+
+    /**
+     * Store a list of strings.
+     *
+     * @return A read-only view of the stored strings.
+     */
+    List<String> copyOf(List<String> strings) {
+        int size = strings.size();
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = add(strings.get(i));
+        }
+
+        return new StringList(ids);
+    }
+
+    /**
+     * Store a string.
+     *
+     * @return The ID of the stored string.
+     */
+    synchronized int add(String string) {
+        if (string == null) {
+            return NULL_ID;
+        }
+
+        int mask = mHashTable.length - 1;
+        int slot = string.hashCode() & mask;
+        int id;
+        while ((id = mHashTable[slot]) != EMPTY_SLOT) {
+            if (equals(id, string)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        id = append(string);
+        mHashTable[slot] = id;
+
+        // Keep the load factor below 0.5
+        if (mStringCount * 2 > mHashTable.length) {
+            rehash(mHashTable.length * 2);
+        }
+
+        return id;
+    }
+
+    /**
+     * Get a stored string.
+     *
+     * @param id
+     *         The ID returned by {@link #add(String)}.
+     */
+    synchronized String get(int id) {
+        if (id == NULL_ID) {
+            return null;
+        }
+
+        return new String(mChars, mStrings[2 * id], mStrings[2 * id + 1]);
+    }
+
+    private int append(String string) {
+        int length = string.length();
+        if (mCharCount + length > mChars.length) {
+            char[] chars = new char[Math.max(mChars.length * 2, mCharCount + length)];
+            System.arraycopy(mChars, 0, chars, 0, mCharCount);
+            mChars = chars;
+        }
+
+        if (2 * mStringCount + 2 > mStrings.length) {
+            int[] strings = new int[mStrings.length * 2];
+            System.arraycopy(mStrings, 0, strings, 0, 2 * mStringCount);
+            mStrings = strings;
+        }
+
+        string.getChars(0, length, mChars, mCharCount);
+
+        int id = mStringCount++;
+        mStrings[2 * id] = mCharCount;
+        mStrings[2 * id + 1] = length;
+        mCharCount += length;
+
+        return id;
+    }
+
+    private boolean equals(int id, String string) {
+        int offset = mStrings[2 * id];
+        int length = mStrings[2 * id + 1];
+        if (length != string.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (mChars[offset + i] != string.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Same as {@link String#hashCode()} of the stored string.
+     */
+    private int hashCode(int id) {
+        int offset = mStrings[2 * id];
+        int end = offset + mStrings[2 * id + 1];
+        int hash = 0;
+        for (int i = offset; i < end; i++) {
+            hash = 31 * hash + mChars[i];
+        }
+
+        return hash;
+    }
+
+    private void rehash(int capacity) {
+        int[] hashTable = newHashTable(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < mStringCount; id++) {
+            int slot = hashCode(id) & mask;
+            while (hashTable[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            hashTable[slot] = id;
+        }
+
+        mHashTable = hashTable;
+    }
+
+    private static int[] newHashTable(int capacity) {
+        int[] hashTable = new int[capacity];
+        Arrays.fill(hashTable, EMPTY_SLOT);
+
+        return hashTable;
+    }
+
+
+    /**
+     * Read-only list of strings stored in this arena.
+     */
+    private final class StringList extends AbstractList<String> implements RandomAccess {
+        private final int[] mIds;
+
+        StringList(int[] ids) {
+            mIds = ids;
+        }
+
+        @Override
+        public String get(int location) {
+            return StringArena.this.get(mIds[location]);
+        }
+
+        @Override
+        public int size() {
+            return mIds.length;
+        }
+    }
+}
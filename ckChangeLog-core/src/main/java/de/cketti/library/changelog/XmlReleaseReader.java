@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+
+/**
+ * {@link ReleaseReader} reading a change log XML file using an {@link XmlPullParser}.
+ *
+ * <p>
+ * {@link #close()} doesn't close the parser. Subclasses can override it if necessary.
+ * </p>
+ *
+ * @param <T>
+ *         The type of release returned by this reader.
+ */
+public class XmlReleaseReader<T extends Release> implements ReleaseReader<T> {
+    private static final String TAG_RELEASE = "release";
+    private static final String TAG_CHANGE = "change";
+    private static final String ATTRIBUTE_VERSION = "version";
+    private static final String ATTRIBUTE_VERSION_CODE = "versioncode";
+
+    /**
+     * Version code used for releases without a valid {@code versioncode} attribute.
+     */
+    private static final int NO_VERSION = -1;
+
+
+    private final XmlPullParser mXml;
+    private final Release.Factory<T> mFactory;
+    private final int mNewerThan;
+    private final int mMaxVersionCode;
+    private boolean mFinished = false;
+
+
+    /**
+     * Create an {@code XmlReleaseReader} instance.
+     *
+     * @param xml
+     *         The {@code XmlPullParser} instance used to read the change log.
+     * @param factory
+     *         Used to create the returned releases.
+     * @param newerThan
+     *         Stop reading when encountering a release with a version code lower than or equal to
+     *         this value. Use {@link #ALL_VERSIONS} to read the full change log.
+     */
+    public XmlReleaseReader(XmlPullParser xml, Release.Factory<T> factory, int newerThan) {
+        this(xml, factory, newerThan, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create an {@code XmlReleaseReader} instance.
+     *
+     * @param xml
+     *         The {@code XmlPullParser} instance used to read the change log.
+     * @param factory
+     *         Used to create the returned releases.
+     * @param newerThan
+     *         Stop reading when encountering a release with a version code lower than or equal to
+     *         this value. Use {@link #ALL_VERSIONS} to read the full change log.
+     * @param maxVersionCode
+     *         Releases with a version code higher than this value are skipped without reading
+     *         their changes.
+     */
+    public XmlReleaseReader(XmlPullParser xml, Release.Factory<T> factory, int newerThan,
+            int maxVersionCode) {
+        mXml = xml;
+        mFactory = factory;
+        mNewerThan = newerThan;
+        mMaxVersionCode = maxVersionCode;
+    }
+
+    @Override
+    public T next() throws IOException {
+        if (mFinished) {
+            return null;
+        }
+
+        try {
+            int eventType = mXml.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG &&
+                        mXml.getName().equals(TAG_RELEASE)) {
+                    int versionCode = readVersionCode();
+                    if (mNewerThan != ALL_VERSIONS && versionCode <= mNewerThan) {
+                        // Stop reading more elements if this entry is not newer than the last
+                        // version.
+                        break;
+                    }
+
+                    if (versionCode <= mMaxVersionCode) {
+                        return parseReleaseTag(versionCode);
+                    }
+
+                    skipReleaseTag();
+                }
+                eventType = mXml.next();
+            }
+        } catch (XmlPullParserException e) {
+            mFinished = true;
+            IOException exception = new IOException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+
+        mFinished = true;
+        return null;
+    }
+
+    /**
+     * Read the {@code versioncode} attribute of the current {@code release} tag.
+     */
+    private int readVersionCode() {
+        try {
+            String versionCodeStr = mXml.getAttributeValue(null, ATTRIBUTE_VERSION_CODE);
+            return Integer.parseInt(versionCodeStr);
+        } catch (NumberFormatException e) {
+            return NO_VERSION;
+        }
+    }
+
+    /**
+     * Parse the {@code release} tag of a change log XML file.
+     */
+    private T parseReleaseTag(int versionCode) throws XmlPullParserException,
+            IOException {
+        String version = mXml.getAttributeValue(null, ATTRIBUTE_VERSION);
+
+        int eventType = mXml.getEventType();
+        List<String> changes = new ArrayList<String>();
+        while (eventType != XmlPullParser.END_TAG || mXml.getName().equals(TAG_CHANGE)) {
+            if (eventType == XmlPullParser.START_TAG && mXml.getName().equals(TAG_CHANGE)) {
+                eventType = mXml.next();
+
+                changes.add(mXml.getText());
+            }
+            eventType = mXml.next();
+        }
+
+        return mFactory.createRelease(versionCode, version, changes);
+    }
+
+    /**
+     * Move the parser to the end tag of the current {@code release} tag.
+     */
+    private void skipReleaseTag() throws XmlPullParserException, IOException {
+        int depth = mXml.getDepth();
+        int eventType = mXml.getEventType();
+        while (eventType != XmlPullParser.END_TAG || mXml.getDepth() != depth) {
+            eventType = mXml.next();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Do nothing
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+
+/**
+ * Checks that the change log index compiler in {@code changelog-index-compiler.gradle} extracts
+ * the same releases as {@link XmlReleaseReader}.
+ *
+ * <p>
+ * The build compiles the change logs of the sample app and the ones in {@code src/test/changelogs}
+ * before running the tests. The directory containing the XML files and the compiled files is
+ * passed in the system property {@code compiledChangeLogDir}.
+ * </p>
+ */
+public class ChangeLogIndexCompilerTest {
+    private static final Release.Factory<Release> FACTORY = new Release.Factory<Release>() {
+        @Override
+        public Release createRelease(int versionCode, String versionName, List<String> changes) {
+            return new Release(versionCode, versionName, changes) { };
+        }
+    };
+
+
+    @Test
+    public void compiledChangeLogsMatchXml() throws Exception {
+        String compiledChangeLogDir = System.getProperty("compiledChangeLogDir");
+        assumeNotNull(compiledChangeLogDir);
+
+        File[] xmlFiles = new File(compiledChangeLogDir).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".xml");
+            }
+        });
+        assertTrue(xmlFiles != null && xmlFiles.length > 0);
+
+        for (File xmlFile : xmlFiles) {
+            String name = xmlFile.getName();
+            File indexFile = new File(xmlFile.getParentFile(),
+                    name.substring(0, name.length() - 4) + ".bin");
+
+            assertEquals(name, parse(xmlFile), readCompiled(indexFile));
+        }
+    }
+
+
+    /**
+     * Read a change log like {@code ChangeLog} does: a later release with the same version code
+     * replaces an earlier one, and the releases are sorted by version code, latest first.
+     */
+    private static List<String> parse(File xmlFile) throws IOException, XmlPullParserException {
+        InputStream in = new FileInputStream(xmlFile);
+        try {
+            KXmlParser parser = new KXmlParser();
+            parser.setInput(in, null);
+
+            ReleaseReader<Release> reader = new XmlReleaseReader<Release>(parser, FACTORY,
+                    ReleaseReader.ALL_VERSIONS);
+            TreeMap<Integer, String> releases = new TreeMap<Integer, String>();
+            Release release;
+            while ((release = reader.next()) != null) {
+                releases.put(release.versionCode, toString(release));
+            }
+
+            List<String> result = new ArrayList<String>(releases.size());
+            for (Map.Entry<Integer, String> entry : releases.descendingMap().entrySet()) {
+                result.add(entry.getValue());
+            }
+
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> readCompiled(File indexFile) throws IOException {
+        InputStream in = new FileInputStream(indexFile);
+        try {
+            CompiledChangeLog changeLog = CompiledChangeLog.read(in);
+
+            List<String> result = new ArrayList<String>(changeLog.size());
+            for (int i = 0, size = changeLog.size(); i < size; i++) {
+                result.add(toString(changeLog.getRelease(i, FACTORY)));
+            }
+
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String toString(Release release) {
+        return release.versionCode + " " + release.versionName + " " + release.changes;
+    }
+}
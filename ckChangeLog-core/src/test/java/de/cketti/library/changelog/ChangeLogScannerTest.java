@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Feeds the same documents to {@link ChangeLogScanner} and {@link XmlReleaseReader} (using kXML)
+ * and checks that both return the same releases.
+ */
+public class ChangeLogScannerTest {
+    private static final Release.Factory<Release> FACTORY = new Release.Factory<Release>() {
+        @Override
+        public Release createRelease(int versionCode, String versionName, List<String> changes) {
+            return new Release(versionCode, versionName, changes) { };
+        }
+    };
+
+
+    @Test
+    public void simpleChangeLog() throws Exception {
+        assertSameReleases("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                "<changelog>\n" +
+                "    <release version=\"1.1\" versioncode=\"11\" >\n" +
+                "        <change>Totally new and shiny version</change>\n" +
+                "    </release>\n" +
+                "    <release version=\"1.0\" versioncode=\"10\" >\n" +
+                "        <change>Fixed: A bug fix</change>\n" +
+                "        <change>Some other changes I can't quite remember</change>\n" +
+                "    </release>\n" +
+                "    <release version=\"0.1\" versioncode=\"1\">\n" +
+                "        <change>First release</change>\n" +
+                "    </release>\n" +
+                "</changelog>\n", 3);
+    }
+
+    @Test
+    public void newerThanAndMaxVersionCode() throws Exception {
+        String xml = "<changelog>" +
+                "<release version=\"4\" versioncode=\"4\"><change>d</change></release>" +
+                "<release version=\"3\" versioncode=\"3\"><change>c</change></release>" +
+                "<release version=\"2\" versioncode=\"2\"><change>b</change></release>" +
+                "<release version=\"1\" versioncode=\"1\"><change>a</change></release>" +
+                "</changelog>";
+
+        assertSameReleases(xml, 2, Integer.MAX_VALUE, 2);
+        assertSameReleases(xml, ReleaseReader.ALL_VERSIONS, 2, 2);
+        assertSameReleases(xml, 1, 3, 2);
+        assertSameReleases(xml, 4, Integer.MAX_VALUE, 0);
+    }
+
+    @Test
+    public void textDecoding() throws Exception {
+        assertSameReleases("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<changelog><release version=\"a &amp; b\" versioncode=\"1\">" +
+                "<change>&lt;b&gt; &quot;x&quot; &apos;y&apos; &#65;&#x42;&#x20AC;</change>" +
+                "<change>\u00E4\u00F6\u00FC \u20AC \uD83D\uDE00</change>" +
+                "<change><![CDATA[<b>bold</b> ]] ]]]]><![CDATA[]]> &amp; more</change>" +
+                "<change>line 1\r\nline 2\rline 3</change>" +
+                "<change>a<!-- comment -->b<?pi data?>c</change>" +
+                "<change><!-- comment -->text</change>" +
+                "<change>   </change>" +
+                "</release></changelog>", 1);
+    }
+
+    @Test
+    public void attributes() throws Exception {
+        assertSameReleases("<changelog>" +
+                "<release versioncode='3' version='single quotes'><change>c</change></release>" +
+                "<release version=\"tab\tand\nline\r\nbreaks\r\" versioncode=\" 2\">" +
+                "<change>b</change>" +
+                "</release>" +
+                "<release versioncode=\"+1\"><change id=\"1\" >attributes</change></release>" +
+                "<release version=\"no code\"><change>x</change></release>" +
+                "<release version=\"overflow\" versioncode=\"2147483648\"><change>y</change>" +
+                "</release>" +
+                "<release version=\"min\" versioncode=\"-2147483648\"><change>z</change>" +
+                "</release>" +
+                "</changelog>", 6);
+    }
+
+    @Test
+    public void emptyElements() throws Exception {
+        assertSameReleases("<changelog>" +
+                "<release version=\"3\" versioncode=\"3\"/>" +
+                "<release version=\"2\" versioncode=\"2\"></release>" +
+                "<release version=\"1\" versioncode=\"1\"><change/><change></change>" +
+                "<change><!-- comment --></change><change>text</change></release>" +
+                "</changelog>", 3);
+    }
+
+    @Test
+    public void elementNestedInChange() throws Exception {
+        assertSameReleases("<changelog>" +
+                "<release versioncode=\"5\"><change>t<b>x</b>after</change>" +
+                "<change>next</change></release>" +
+                "<release versioncode=\"4\"><change><b>x</b></change><change>y</change>" +
+                "</release>" +
+                "<release versioncode=\"3\"><change>a<br/>b</change><change>c</change></release>" +
+                "<release versioncode=\"2\"><change>a<change>b</change></change></release>" +
+                "</changelog>", 4);
+    }
+
+    @Test
+    public void changeInUnknownElement() throws Exception {
+        assertSameReleases("<changelog>" +
+                "<release versioncode=\"2\"><group><change>grouped</change></group>" +
+                "<change>after the group</change></release>" +
+                "<release versioncode=\"1\"><group><group><change>deep</change></group></group>" +
+                "</release>" +
+                "</changelog>", 2);
+    }
+
+    @Test
+    public void markupOutsideOfReleases() throws Exception {
+        assertSameReleases("\uFEFF<?xml version=\"1.0\" encoding=\"US-ASCII\"?>\n" +
+                "<!DOCTYPE changelog [ <!ELEMENT changelog ANY> ]>\n" +
+                "<!-- <release versioncode=\"9\"><change>commented out</change></release> -->\n" +
+                "<changelog><header><release versioncode=\"2\"><change>nested</change></release>" +
+                "</header><![CDATA[<release versioncode=\"8\">]]>" +
+                "<release versioncode=\"1\"><change>a</change></release>" +
+                "</changelog>", 2);
+    }
+
+    @Test
+    public void skippedReleaseContainingRelease() throws Exception {
+        String xml = "<changelog>" +
+                "<release versioncode=\"3\"><release versioncode=\"2\"><change>b</change>" +
+                "</release><change>c</change></release>" +
+                "<release versioncode=\"1\"><change>a</change></release>" +
+                "</changelog>";
+
+        assertSameReleases(xml, ReleaseReader.ALL_VERSIONS, 2, 1);
+    }
+
+    @Test
+    public void supplementaryCharacterReference() throws Exception {
+        // Not compared with kXML 2.3, which truncates the code point to 16 bits
+        List<String> releases = scan("<changelog><release versioncode=\"1\">" +
+                "<change>&#x1F600;</change></release></changelog>",
+                ReleaseReader.ALL_VERSIONS, Integer.MAX_VALUE, false);
+
+        assertEquals(1, releases.size());
+        assertEquals("1 null [\uD83D\uDE00]", releases.get(0));
+    }
+
+    @Test
+    public void canScan() throws Exception {
+        assertTrue(canScan("<changelog/>"));
+        assertTrue(canScan("<?xml version=\"1.0\" encoding=\"UTF-8\"?><changelog/>"));
+        assertTrue(canScan("<?xml version='1.0' encoding='us-ascii'?><changelog/>"));
+        assertFalse(canScan("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><changelog/>"));
+        assertFalse(ChangeLogScanner.canScan(new byte[] { (byte) 0xFE, (byte) 0xFF, 0, '<' }, 4));
+    }
+
+    @Test
+    public void unsupportedEncoding() throws Exception {
+        byte[] data = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><changelog/>"
+                .getBytes("UTF-8");
+        ChangeLogScanner<Release> scanner = new ChangeLogScanner<Release>(
+                new ByteArrayInputStream(data), FACTORY, ReleaseReader.ALL_VERSIONS,
+                Integer.MAX_VALUE);
+        try {
+            scanner.next();
+            fail("Expected UnsupportedEncodingException");
+        } catch (UnsupportedEncodingException e) {
+            // Expected
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unexpectedEndOfFile() throws Exception {
+        scan("<changelog><release versioncode=\"1\"><change>a</change>",
+                ReleaseReader.ALL_VERSIONS, Integer.MAX_VALUE, false);
+    }
+
+
+    private static void assertSameReleases(String xml, int expectedCount) throws Exception {
+        assertSameReleases(xml, ReleaseReader.ALL_VERSIONS, Integer.MAX_VALUE, expectedCount);
+    }
+
+    private static void assertSameReleases(String xml, int newerThan, int maxVersionCode,
+            int expectedCount) throws Exception {
+        List<String> expected = parse(xml, newerThan, maxVersionCode);
+        List<String> actual = scan(xml, newerThan, maxVersionCode, false);
+
+        assertEquals(expected, actual);
+        assertEquals(expectedCount, actual.size());
+
+        // Reading one byte at a time makes every token cross the end of the buffer
+        assertEquals(expected, scan(xml, newerThan, maxVersionCode, true));
+    }
+
+    private static List<String> parse(String xml, int newerThan, int maxVersionCode)
+            throws IOException, XmlPullParserException {
+        KXmlParser parser = new KXmlParser();
+        parser.setInput(new ByteArrayInputStream(xml.getBytes("UTF-8")), null);
+
+        return readAll(new XmlReleaseReader<Release>(parser, FACTORY, newerThan,
+                maxVersionCode));
+    }
+
+    private static List<String> scan(String xml, int newerThan, int maxVersionCode,
+            boolean oneByteAtATime) throws IOException {
+        InputStream in = new ByteArrayInputStream(xml.getBytes("UTF-8"));
+        if (oneByteAtATime) {
+            in = new OneByteInputStream(in);
+        }
+
+        ChangeLogScanner<Release> scanner = new ChangeLogScanner<Release>(in, FACTORY, newerThan,
+                maxVersionCode);
+        try {
+            return readAll(scanner);
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private static List<String> readAll(ReleaseReader<Release> reader) throws IOException {
+        List<String> releases = new ArrayList<String>();
+        Release release;
+        while ((release = reader.next()) != null) {
+            releases.add(release.versionCode + " " + release.versionName + " " + release.changes);
+        }
+
+        return releases;
+    }
+
+    private static boolean canScan(String header) throws UnsupportedEncodingException {
+        byte[] data = header.getBytes("UTF-8");
+        return ChangeLogScanner.canScan(data, data.length);
+    }
+
+
+    /**
+     * Returns at most one byte per {@code read()} call.
+     */
+    private static final class OneByteInputStream extends FilterInputStream {
+        OneByteInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            return super.read(buffer, offset, Math.min(count, 1));
+        }
+    }
+}
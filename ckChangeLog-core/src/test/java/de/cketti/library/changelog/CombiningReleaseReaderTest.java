@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class CombiningReleaseReaderTest {
+    private static final Release.Factory<Release> FACTORY = new Release.Factory<Release>() {
+        @Override
+        public Release createRelease(int versionCode, String versionName, List<String> changes) {
+            return new Release(versionCode, versionName, changes) { };
+        }
+    };
+
+
+    @Test
+    public void releasesAreSortedByVersionCode() throws Exception {
+        ReleaseReader<Release> reader = combine(
+                reader(release(5, "5", "app 5"), release(2, "2", "app 2")),
+                reader(release(4, "4", "module 4"), release(3, "3", "module 3")),
+                reader(release(1, "1", "other 1")));
+
+        assertReleases(reader,
+                "5 5 [app 5]",
+                "4 4 [module 4]",
+                "3 3 [module 3]",
+                "2 2 [app 2]",
+                "1 1 [other 1]");
+    }
+
+    @Test
+    public void equalVersionCodesAreCombinedInSourceOrder() throws Exception {
+        ReleaseReader<Release> reader = combine(
+                reader(release(3, "3.0", "app a", "app b"), release(1, "1.0", "app")),
+                reader(release(3, "3.0-module", "module"), release(2, "2.0", "module 2")),
+                reader(release(3, "3.0-other", "other"), release(1, "1.0-other", "other 1")));
+
+        assertReleases(reader,
+                "3 3.0 [app a, app b, module, other]",
+                "2 2.0 [module 2]",
+                "1 1.0 [app, other 1]");
+    }
+
+    @Test
+    public void versionNameIsTakenFromFirstSourceHavingOne() throws Exception {
+        ReleaseReader<Release> reader = combine(
+                reader(release(2, null, "app")),
+                reader(release(2, "2.0", "module")),
+                reader(release(2, "2.0-other", "other")));
+
+        assertReleases(reader, "2 2.0 [app, module, other]");
+    }
+
+    @Test
+    public void releaseOfSingleSourceIsReturnedUnchanged() throws Exception {
+        Release release = release(2, "2", "app");
+        ReleaseReader<Release> reader = combine(
+                reader(release),
+                reader(release(1, "1", "module")));
+
+        assertSame(release, reader.next());
+    }
+
+    @Test
+    public void emptySources() throws Exception {
+        assertNull(combine().next());
+        assertNull(combine(reader(), reader()).next());
+
+        ReleaseReader<Release> reader = combine(reader(), reader(release(1, "1", "a")), reader());
+        assertReleases(reader, "1 1 [a]");
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void closeClosesAllReaders() throws Exception {
+        TestReader first = reader();
+        TestReader failing = reader();
+        failing.mCloseException = new IOException("first");
+        TestReader failingToo = reader();
+        failingToo.mCloseException = new IOException("second");
+        TestReader last = reader();
+
+        try {
+            combine(first, failing, failingToo, last).close();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(failing.mCloseException, e);
+        }
+
+        assertTrue(first.mClosed);
+        assertTrue(failing.mClosed);
+        assertTrue(failingToo.mClosed);
+        assertTrue(last.mClosed);
+    }
+
+
+    private static void assertReleases(ReleaseReader<Release> reader, String... expected)
+            throws IOException {
+        List<String> releases = new ArrayList<String>();
+        Release release;
+        while ((release = reader.next()) != null) {
+            releases.add(release.versionCode + " " + release.versionName + " " + release.changes);
+        }
+
+        assertEquals(Arrays.asList(expected), releases);
+    }
+
+    private static ReleaseReader<Release> combine(TestReader... readers) {
+        return new CombiningReleaseReader<Release>(Arrays.asList(readers), FACTORY);
+    }
+
+    private static TestReader reader(Release... releases) {
+        return new TestReader(Arrays.asList(releases));
+    }
+
+    private static Release release(int versionCode, String versionName, String... changes) {
+        return new Release(versionCode, versionName, Collections.unmodifiableList(
+                Arrays.asList(changes))) { };
+    }
+
+
+    private static final class TestReader implements ReleaseReader<Release> {
+        private final List<Release> mReleases;
+        private int mIndex = 0;
+        boolean mClosed = false;
+        IOException mCloseException;
+
+        TestReader(List<Release> releases) {
+            mReleases = releases;
+        }
+
+        @Override
+        public Release next() {
+            return (mIndex < mReleases.size()) ? mReleases.get(mIndex++) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mClosed = true;
+            if (mCloseException != null) {
+                throw mCloseException;
+            }
+        }
+    }
+}
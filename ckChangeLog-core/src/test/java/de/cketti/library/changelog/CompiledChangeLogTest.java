@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+public class CompiledChangeLogTest {
+    private static final Release.Factory<Release> FACTORY = new Release.Factory<Release>() {
+        @Override
+        public Release createRelease(int versionCode, String versionName, List<String> changes) {
+            return new Release(versionCode, versionName, changes) { };
+        }
+    };
+
+
+    @Test
+    public void readReleases() throws Exception {
+        CompiledChangeLog changeLog = read(
+                release(3, "1.2", "Fixed \u00FCml\u00E4uts \u20AC \uD83D\uDE00", null),
+                release(2, null),
+                release(1, "1.0", "First release", "1.0"));
+
+        assertEquals(3, changeLog.size());
+        assertEquals(3, changeLog.getVersionCode(0));
+        assertEquals(1, changeLog.getVersionCode(2));
+        assertRelease(changeLog.getRelease(0, FACTORY), 3, "1.2",
+                "Fixed \u00FCml\u00E4uts \u20AC \uD83D\uDE00", null);
+        assertRelease(changeLog.getRelease(1, FACTORY), 2, null);
+        assertRelease(changeLog.getRelease(2, FACTORY), 1, "1.0", "First release", "1.0");
+    }
+
+    @Test
+    public void readEmptyStream() throws Exception {
+        assertNull(CompiledChangeLog.read(new ByteArrayInputStream(new byte[0])));
+        assertNull(CompiledChangeLog.readLatestVersionCode(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void readInvalidData() throws Exception {
+        byte[] data = compile(release(2, "2", "b"), release(1, "1", "a"));
+
+        byte[] wrongMagic = data.clone();
+        wrongMagic[0] = 'X';
+        assertReadFails(wrongMagic);
+
+        byte[] wrongVersion = data.clone();
+        wrongVersion[5] = 2;
+        assertReadFails(wrongVersion);
+
+        assertReadFails(Arrays.copyOf(data, data.length - 1));
+        assertReadFails(Arrays.copyOf(data, 10));
+    }
+
+    @Test
+    public void readLatestVersionCode() throws Exception {
+        assertEquals(Integer.valueOf(42), CompiledChangeLog.readLatestVersionCode(
+                new ByteArrayInputStream(compile(release(42, "4.2"), release(1, "1")))));
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), CompiledChangeLog.readLatestVersionCode(
+                new ByteArrayInputStream(compile())));
+    }
+
+    @Test
+    public void countNewerThanAndIndexOf() throws Exception {
+        CompiledChangeLog changeLog = read(release(50, "5"), release(40, "4"), release(30, "3"),
+                release(20, "2"), release(10, "1"));
+
+        int[] versionCodes = { Integer.MAX_VALUE, 51, 50, 45, 40, 30, 25, 20, 10, 9, -1 };
+        int[] newer = { 0, 0, 0, 1, 1, 2, 3, 3, 4, 5, 5 };
+        int[] indexes = { -1, -1, 0, -1, 1, 2, -1, 3, 4, -1, -1 };
+        for (int i = 0; i < versionCodes.length; i++) {
+            assertEquals("countNewerThan(" + versionCodes[i] + ")", newer[i],
+                    changeLog.countNewerThan(versionCodes[i]));
+            assertEquals("indexOf(" + versionCodes[i] + ")", indexes[i],
+                    changeLog.indexOf(versionCodes[i]));
+        }
+
+        CompiledChangeLog emptyChangeLog = read();
+        assertEquals(0, emptyChangeLog.countNewerThan(1));
+        assertEquals(-1, emptyChangeLog.indexOf(1));
+    }
+
+    @Test
+    public void countNewerThanWithEvenAndOddReleaseCounts() throws Exception {
+        for (int count = 1; count <= 9; count++) {
+            Release[] releases = new Release[count];
+            for (int i = 0; i < count; i++) {
+                int versionCode = (count - i) * 2;
+                releases[i] = release(versionCode, String.valueOf(versionCode));
+            }
+            CompiledChangeLog changeLog = read(releases);
+
+            for (int i = 0; i < count; i++) {
+                int versionCode = changeLog.getVersionCode(i);
+                assertEquals(i, changeLog.indexOf(versionCode));
+                assertEquals(i, changeLog.countNewerThan(versionCode));
+                assertEquals(i + 1, changeLog.countNewerThan(versionCode - 1));
+                assertEquals(-1, changeLog.indexOf(versionCode + 1));
+            }
+        }
+    }
+
+    @Test
+    public void newReader() throws Exception {
+        CompiledChangeLog changeLog = read(release(4, "4"), release(3, "3"), release(2, "2"),
+                release(1, "1"));
+
+        assertVersionCodes(changeLog.newReader(FACTORY, ReleaseReader.ALL_VERSIONS,
+                Integer.MAX_VALUE), 4, 3, 2, 1);
+        assertVersionCodes(changeLog.newReader(FACTORY, 2, Integer.MAX_VALUE), 4, 3);
+        assertVersionCodes(changeLog.newReader(FACTORY, ReleaseReader.ALL_VERSIONS, 2), 2, 1);
+        assertVersionCodes(changeLog.newReader(FACTORY, 1, 3), 3, 2);
+        assertVersionCodes(changeLog.newReader(FACTORY, 4, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void lazyReleaseDecodesChangesOnAccess() throws Exception {
+        CompiledChangeLog changeLog = read(release(2, "2", "b1", "b2", null), release(1, "1"));
+
+        Release release = changeLog.getLazyRelease(0, FACTORY);
+        assertEquals(2, release.versionCode);
+        assertEquals("2", release.versionName);
+        assertEquals(3, release.changes.size());
+        assertEquals(Arrays.asList("b1", "b2", null), release.changes);
+        assertSame(release.changes.get(0), release.changes.get(0));
+        assertEquals(0, changeLog.getLazyRelease(1, FACTORY).changes.size());
+
+        try {
+            release.changes.get(3);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void lazyReleasesEvictLeastRecentlyUsedChanges() throws Exception {
+        CompiledChangeLog changeLog = read(createReleases(40));
+        List<Release> releases = getLazyReleases(changeLog);
+        List<String> decoded = getFirstChanges(releases);
+
+        // Only the changes of the 32 most recently accessed releases are still cached
+        for (int i = 39; i >= 8; i--) {
+            assertSame(decoded.get(i), releases.get(i).changes.get(0));
+        }
+        for (int i = 0; i < 8; i++) {
+            String change = releases.get(i).changes.get(0);
+            assertNotSame(decoded.get(i), change);
+            assertEquals("change " + i, change);
+        }
+    }
+
+    @Test
+    public void lazyReleasesKeepRecentlyAccessedChanges() throws Exception {
+        CompiledChangeLog changeLog = read(createReleases(33));
+        List<Release> releases = getLazyReleases(changeLog);
+        List<String> decoded = getFirstChanges(releases);
+
+        // Release 1 is the least recently used one. Accessing it evicts release 2 instead when
+        // release 0 is decoded again.
+        releases.get(1).changes.get(0);
+        releases.get(0).changes.get(0);
+
+        assertSame(decoded.get(1), releases.get(1).changes.get(0));
+        assertNotSame(decoded.get(2), releases.get(2).changes.get(0));
+    }
+
+
+    @Test
+    public void checksumIgnoresNewerReleases() throws Exception {
+        CompiledChangeLog changeLog = read(release(2, "2", "b"), release(1, "1", "a"));
+        CompiledChangeLog updatedChangeLog = read(release(4, "4", "d"), release(3, "3", "c"),
+                release(2, "2", "b"), release(1, "1", "a"));
+
+        assertEquals(checksum(changeLog, Integer.MAX_VALUE), checksum(updatedChangeLog, 2));
+        assertEquals(checksum(changeLog, 1), checksum(updatedChangeLog, 1));
+        assertFalse(checksum(changeLog, 2) == checksum(updatedChangeLog, 3));
+    }
+
+    @Test
+    public void checksumDetectsModifiedReleases() throws Exception {
+        long checksum = checksum(read(release(2, "2", "b"), release(1, "1", "a", "c")), 2);
+
+        assertChecksumDiffers(checksum, release(2, "2", "b"), release(1, "1", "a", "x"));
+        assertChecksumDiffers(checksum, release(2, "2", "b"), release(1, "1.0", "a", "c"));
+        assertChecksumDiffers(checksum, release(2, "2", "b"), release(1, null, "a", "c"));
+        assertChecksumDiffers(checksum, release(2, "2", "b"), release(1, "1", "a"));
+        assertChecksumDiffers(checksum, release(2, "2", "b"), release(1, "1", "a", null));
+        assertChecksumDiffers(checksum, release(2, "2", "b"), release(0, "1", "a", "c"));
+        assertChecksumDiffers(checksum, release(2, "2", "b", "a"), release(1, "1", "c"));
+        assertChecksumDiffers(checksum, release(2, "2", "b"));
+    }
+
+
+    private static void assertRelease(Release release, int versionCode, String versionName,
+            String... changes) {
+        assertEquals(versionCode, release.versionCode);
+        assertEquals(versionName, release.versionName);
+        assertEquals(Arrays.asList(changes), release.changes);
+    }
+
+    private static void assertVersionCodes(ReleaseReader<Release> reader, int... expected)
+            throws IOException {
+        List<Integer> versionCodes = new ArrayList<Integer>();
+        Release release;
+        while ((release = reader.next()) != null) {
+            versionCodes.add(release.versionCode);
+        }
+
+        List<Integer> expectedVersionCodes = new ArrayList<Integer>();
+        for (int versionCode : expected) {
+            expectedVersionCodes.add(versionCode);
+        }
+
+        assertEquals(expectedVersionCodes, versionCodes);
+    }
+
+    private static void assertChecksumDiffers(long expected, Release... releases)
+            throws IOException {
+        assertFalse(expected == checksum(read(releases), 2));
+    }
+
+    private static long checksum(CompiledChangeLog changeLog, int maxVersionCode) {
+        CRC32 checksum = new CRC32();
+        changeLog.updateChecksum(checksum, maxVersionCode);
+        return checksum.getValue();
+    }
+
+    private static void assertReadFails(byte[] data) {
+        try {
+            CompiledChangeLog.read(new ByteArrayInputStream(data));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static Release[] createReleases(int count) {
+        Release[] releases = new Release[count];
+        for (int i = 0; i < count; i++) {
+            releases[i] = release(count - i, String.valueOf(count - i), "change " + i);
+        }
+
+        return releases;
+    }
+
+    private static List<Release> getLazyReleases(CompiledChangeLog changeLog) {
+        List<Release> releases = new ArrayList<Release>();
+        for (int i = 0; i < changeLog.size(); i++) {
+            releases.add(changeLog.getLazyRelease(i, FACTORY));
+        }
+
+        return releases;
+    }
+
+    private static List<String> getFirstChanges(List<Release> releases) {
+        List<String> changes = new ArrayList<String>();
+        for (Release release : releases) {
+            changes.add(release.changes.get(0));
+        }
+
+        return changes;
+    }
+
+    private static Release release(int versionCode, String versionName, String... changes) {
+        return new Release(versionCode, versionName, Arrays.asList(changes)) { };
+    }
+
+    private static CompiledChangeLog read(Release... releases) throws IOException {
+        return CompiledChangeLog.read(new ByteArrayInputStream(compile(releases)));
+    }
+
+    /**
+     * Write releases in the format created by {@code changelog-index.gradle}.
+     *
+     * @param releases
+     *         The releases, latest version first.
+     */
+    private static byte[] compile(Release... releases) throws IOException {
+        ByteArrayOutputStream stringPool = new ByteArrayOutputStream();
+        DataOutputStream stringPoolOut = new DataOutputStream(stringPool);
+        Map<String, Integer> stringOffsets = new HashMap<String, Integer>();
+
+        ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        DataOutputStream tablesOut = new DataOutputStream(tables);
+        List<Integer> changeOffsets = new ArrayList<Integer>();
+        for (Release release : releases) {
+            tablesOut.writeInt(release.versionCode);
+            tablesOut.writeInt(addString(stringPoolOut, stringOffsets, release.versionName));
+            tablesOut.writeInt(changeOffsets.size());
+            tablesOut.writeInt(release.changes.size());
+            for (String change : release.changes) {
+                changeOffsets.add(addString(stringPoolOut, stringOffsets, change));
+            }
+        }
+        for (int offset : changeOffsets) {
+            tablesOut.writeInt(offset);
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(data);
+        out.writeInt(CompiledChangeLog.MAGIC);
+        out.writeShort(CompiledChangeLog.FORMAT_VERSION);
+        out.writeShort(0);
+        out.writeInt(releases.length);
+        out.writeInt(changeOffsets.size());
+        out.writeInt(stringPool.size());
+        tables.writeTo(out);
+        stringPool.writeTo(out);
+
+        return data.toByteArray();
+    }
+
+    private static int addString(DataOutputStream stringPoolOut, Map<String, Integer> offsets,
+            String string) throws IOException {
+        if (string == null) {
+            return -1;
+        }
+
+        Integer offset = offsets.get(string);
+        if (offset == null) {
+            offset = stringPoolOut.size();
+            byte[] bytes = string.getBytes("UTF-8");
+            stringPoolOut.writeInt(bytes.length);
+            stringPoolOut.write(bytes);
+            offsets.put(string, offset);
+        }
+
+        return offset;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class HtmlRendererTest {
+    private static final String[] VERSION_FORMATS = {
+            "Version %s",
+            "%s",
+            "%1$s",
+            "v%s (beta)",
+            "%s %%",
+            "100%% %s %%%%",
+            "%%s %s",
+            "No version name",
+            "",
+            // Not precompiled
+            "%s and %1$s",
+            "%1$s / %1$s",
+            "%S",
+            "%-8s|",
+            "%.3s",
+            "Version %s%n"
+    };
+
+    private static final String[] VERSION_NAMES = {
+            "1.0", "", null, "2.0 %s", "100%", "\u00E4\u20AC\uD83D\uDE00", "$1"
+    };
+
+
+    @Test
+    public void versionHeadingMatchesStringFormat() throws Exception {
+        for (String versionFormat : VERSION_FORMATS) {
+            HtmlRenderer renderer = new HtmlRenderer("", versionFormat);
+            for (String versionName : VERSION_NAMES) {
+                String expected = String.format(versionFormat, versionName);
+
+                assertEquals("Format \"" + versionFormat + "\" with \"" + versionName + "\"",
+                        document("<h1>" + expected + "</h1><ul></ul>"),
+                        render(renderer, release(versionName)));
+            }
+        }
+    }
+
+    @Test
+    public void renderDocument() throws Exception {
+        HtmlRenderer renderer = new HtmlRenderer("h1 { color: red; }", "Version %s");
+        List<Release> releases = Arrays.asList(
+                release("1.1", "Fixed <b>a</b> bug", null),
+                release("1.0"));
+
+        assertEquals("<html><head><style type=\"text/css\">h1 { color: red; }</style></head>" +
+                "<body><h1>Version 1.1</h1><ul><li>Fixed <b>a</b> bug</li><li>null</li></ul>" +
+                "<h1>Version 1.0</h1><ul></ul></body></html>",
+                render(renderer, releases.toArray(new Release[releases.size()])));
+    }
+
+    @Test
+    public void renderWithBodySuffix() throws Exception {
+        HtmlRenderer renderer = new HtmlRenderer("", "%s");
+        StringBuilder sb = new StringBuilder();
+        renderer.render(sb, Collections.singletonList(release("1", "a")), "<script></script>");
+
+        assertEquals(document("<h1>1</h1><ul><li>a</li></ul><script></script>"), sb.toString());
+    }
+
+    @Test
+    public void renderReleases() throws Exception {
+        HtmlRenderer renderer = new HtmlRenderer("", "%s");
+        StringBuilder sb = new StringBuilder();
+        renderer.renderReleases(sb, Arrays.asList(release("2", "b"), release("1", "a")));
+
+        assertEquals("<h1>2</h1><ul><li>b</li></ul><h1>1</h1><ul><li>a</li></ul>",
+                sb.toString());
+    }
+
+    @Test
+    public void renderFromReaderMatchesRenderFromList() throws Exception {
+        HtmlRenderer renderer = new HtmlRenderer("body { }", "Version %s");
+        final List<Release> releases = Arrays.asList(
+                release("3", "c1", "c2"),
+                release("2"),
+                release("1", "a"));
+
+        StringBuilder fromReader = new StringBuilder();
+        renderer.render(fromReader, new ReleaseReader<Release>() {
+            private final Iterator<Release> mIterator = releases.iterator();
+
+            @Override
+            public Release next() {
+                return mIterator.hasNext() ? mIterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+                // Do nothing
+            }
+        });
+
+        StringBuilder fromList = new StringBuilder();
+        renderer.render(fromList, releases);
+
+        assertEquals(fromList.toString(), fromReader.toString());
+    }
+
+
+    private static String render(HtmlRenderer renderer, Release... releases) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        renderer.render(sb, Arrays.asList(releases));
+        return sb.toString();
+    }
+
+    private static String document(String body) {
+        return "<html><head><style type=\"text/css\"></style></head><body>" + body +
+                "</body></html>";
+    }
+
+    private static Release release(String versionName, String... changes) {
+        return new Release(1, versionName, Arrays.asList(changes)) { };
+    }
+}
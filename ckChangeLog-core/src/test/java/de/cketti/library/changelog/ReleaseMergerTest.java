@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+
+
+public class ReleaseMergerTest {
+    @Test
+    public void localizedReleasesReplaceMasterReleases() {
+        Release[] master = { release(3), release(2), release(1) };
+        Release[] localized = { release(3), release(1) };
+
+        Release[] result = ReleaseMerger.merge(new int[] { 3, 2, 1 }, master,
+                new int[][] { { 3, 1 } }, new Release[][] { localized });
+
+        assertSame(localized[0], result[0]);
+        assertSame(master[1], result[1]);
+        assertSame(localized[1], result[2]);
+    }
+
+    @Test
+    public void firstLocalizedChangeLogContainingReleaseWins() {
+        Release[] master = { release(2), release(1) };
+        Release[] preferred = { release(1) };
+        Release[] fallback = { release(2), release(1) };
+
+        Release[] result = ReleaseMerger.merge(new int[] { 2, 1 }, master,
+                new int[][] { { 1 }, { 2, 1 } }, new Release[][] { preferred, fallback });
+
+        assertSame(fallback[0], result[0]);
+        assertSame(preferred[0], result[1]);
+    }
+
+    @Test
+    public void releasesMissingFromMasterAreIgnored() {
+        Release[] master = { release(4), release(2) };
+        Release[] localized = { release(5), release(3), release(2), release(1) };
+
+        Release[] result = ReleaseMerger.merge(new int[] { 4, 2 }, master,
+                new int[][] { { 5, 3, 2, 1 } }, new Release[][] { localized });
+
+        assertSame(master[0], result[0]);
+        assertSame(localized[2], result[1]);
+    }
+
+    @Test
+    public void emptyLocalizedChangeLogsReturnMaster() {
+        Release[] master = { release(2), release(1) };
+
+        Release[] result = ReleaseMerger.merge(new int[] { 2, 1 }, master,
+                new int[][] { {} }, new Release[][] { {} });
+
+        assertSame(master, result);
+    }
+
+
+    private static Release release(int versionCode) {
+        return new Release(versionCode, String.valueOf(versionCode),
+                Collections.<String>emptyList()) { };
+    }
+}
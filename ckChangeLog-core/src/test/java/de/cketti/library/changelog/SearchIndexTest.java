@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+
+public class SearchIndexTest {
+    @Test
+    public void tokenizeSplitsAtNonLetters() {
+        assertTokens("Fixed: crash (again), version 2.0", "fixed", "crash", "again", "version",
+                "2", "0");
+        assertTokens("\u00C4NDERUNG \u00FCber Stra\u00DFe", "\u00E4nderung", "\u00FCber",
+                "stra\u00DFe");
+        assertTokens("  ...  ");
+        assertTokens(null);
+    }
+
+    @Test
+    public void tokenizeSkipsTagsAndEntities() {
+        assertTokens("Fixed <b>bold</b> text", "fixed", "bold", "text");
+        assertTokens("<a href=\"http://example.com\">link</a>", "link");
+        assertTokens("line<br/>break", "line", "break");
+        assertTokens("Tom&amp;Jerry &#x20AC;5", "tom", "jerry", "5");
+    }
+
+    @Test
+    public void tokenizeKeepsTextAfterLessThan() {
+        assertTokens("a < b", "a", "b");
+        assertTokens("1<2 and x<=y", "1", "2", "and", "x", "y");
+        assertTokens("Requires Android <4.0> now", "requires", "android", "4", "0", "now");
+        assertTokens("I <3 it", "i", "3", "it");
+        assertTokens("trailing <", "trailing");
+    }
+
+    @Test
+    public void tokenizeKeepsTextAfterUnterminatedMarkup() {
+        assertTokens("a <b", "a", "b");
+        assertTokens("x & y", "x", "y");
+    }
+
+    @Test
+    public void searchMatchesPrefixesOfAllQueryTokens() {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                release(2, "Fixed crash on startup", "New icon"),
+                release(1, "Fixed a typo", "Crashed when rotating")));
+
+        assertMatches(index.search("fix"), 2, 0, 1, 0);
+        assertMatches(index.search("CRASH"), 2, 0, 1, 1);
+        assertMatches(index.search("fixed crash"), 2, 0);
+        assertMatches(index.search("crash fixed"), 2, 0);
+        assertMatches(index.search("icon typo"));
+        assertMatches(index.search("unknown"));
+        assertMatches(index.search("   "));
+    }
+
+    @Test
+    public void searchFindsTextAfterLessThan() {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                release(1, "Requires Android <4.0, see <b>notes</b>", "<b>Bold</b>")));
+
+        assertMatches(index.search("android 4 see notes"), 1, 0);
+        assertMatches(index.search("bold"), 1, 1);
+        assertMatches(index.search("b"), 1, 1);
+    }
+
+    @Test
+    public void updateWithoutChangesReturnsSameInstance() {
+        SearchIndex index = SearchIndex.build(Arrays.asList(release(2, "b"), release(1, "a")));
+
+        assertSame(index, index.update(Arrays.asList(release(2, "b"), release(1, "a"))));
+    }
+
+    @Test
+    public void updateAddsNewReleases() throws Exception {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                release(2, "Fixed crash", "New icon"),
+                release(1, "First release")));
+
+        List<Release> releases = Arrays.asList(
+                release(4, "Fixed another crash", "New settings"),
+                release(3, "Release notes"),
+                release(2, "Fixed crash", "New icon"),
+                release(1, "First release"));
+        SearchIndex updated = index.update(releases);
+
+        assertNotSame(index, updated);
+        assertEquals(4, updated.getReleaseCount());
+        assertMatches(updated.search("fixed crash"), 4, 0, 2, 0);
+        assertMatches(updated.search("new"), 4, 1, 2, 1);
+        assertMatches(updated.search("release"), 3, 0, 1, 0);
+        assertArrayEquals(serialize(SearchIndex.build(releases)), serialize(updated));
+    }
+
+    @Test
+    public void updateRebuildsModifiedReleases() throws Exception {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                release(2, "Fixed crash"),
+                release(1, "First release")));
+
+        List<Release> releases = Arrays.asList(
+                release(3, "New icon"),
+                release(2, "Fixed freeze"),
+                release(1, "First release"));
+        SearchIndex updated = index.update(releases);
+
+        assertMatches(updated.search("crash"));
+        assertMatches(updated.search("freeze"), 2, 0);
+        assertArrayEquals(serialize(SearchIndex.build(releases)), serialize(updated));
+    }
+
+    @Test
+    public void updateRebuildsWhenReleasesWereRemoved() throws Exception {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                release(3, "Fixed crash"),
+                release(2, "Fixed typo"),
+                release(1, "First release")));
+
+        List<Release> releases = Arrays.asList(
+                release(4, "Fixed freeze"),
+                release(3, "Fixed crash"),
+                release(1, "First release"));
+        SearchIndex updated = index.update(releases);
+
+        assertEquals(3, updated.getReleaseCount());
+        assertMatches(updated.search("fixed"), 4, 0, 3, 0);
+        assertMatches(updated.search("typo"));
+        assertArrayEquals(serialize(SearchIndex.build(releases)), serialize(updated));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateVersionCodes() {
+        SearchIndex.build(Arrays.asList(release(1, "a"), release(1, "b")));
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                release(2, "Fixed crash", null),
+                release(1, "First release")));
+
+        byte[] data = serialize(index);
+        SearchIndex read = SearchIndex.readFrom(
+                new DataInputStream(new ByteArrayInputStream(data)));
+
+        assertEquals(index.getTokenCount(), read.getTokenCount());
+        assertMatches(read.search("fi"), 2, 0, 1, 0);
+        assertArrayEquals(data, serialize(read));
+    }
+
+    @Test(expected = IOException.class)
+    public void readInvalidData() throws Exception {
+        SearchIndex.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[8])));
+    }
+
+
+    private static void assertTokens(String text, String... expected) {
+        assertEquals(Arrays.asList(expected), SearchIndex.tokenize(text));
+    }
+
+    /**
+     * @param expected
+     *         Pairs of version code and change index.
+     */
+    private static void assertMatches(List<SearchIndex.Match> matches, int... expected) {
+        List<String> expectedMatches = new ArrayList<String>();
+        for (int i = 0; i < expected.length; i += 2) {
+            expectedMatches.add(expected[i] + ":" + expected[i + 1]);
+        }
+
+        List<String> actual = new ArrayList<String>();
+        for (SearchIndex.Match match : matches) {
+            actual.add(match.versionCode + ":" + match.changeIndex);
+        }
+
+        assertEquals(expectedMatches, actual);
+    }
+
+    private static byte[] serialize(SearchIndex index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(out);
+        index.writeTo(dataOut);
+        dataOut.flush();
+
+        return out.toByteArray();
+    }
+
+    private static Release release(int versionCode, String... changes) {
+        return new Release(versionCode, String.valueOf(versionCode), Arrays.asList(changes)) { };
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+
+public class StringArenaTest {
+    @Test
+    public void addAndGet() {
+        StringArena arena = new StringArena();
+        String[] strings = { "Fixed a bug", "", "\u00E4\u00F6\u00FC \u20AC \uD83D\uDE00",
+                "<b>bold</b>" };
+
+        int[] ids = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            ids[i] = arena.add(strings[i]);
+        }
+
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals(strings[i], arena.get(ids[i]));
+        }
+    }
+
+    @Test
+    public void addNull() {
+        StringArena arena = new StringArena();
+
+        assertNull(arena.get(arena.add(null)));
+        assertFalse(arena.add(null) == arena.add("null"));
+    }
+
+    @Test
+    public void addingEqualStringReturnsSameId() {
+        StringArena arena = new StringArena();
+        int id = arena.add("Fixed a bug");
+        arena.add("Another change");
+
+        assertEquals(id, arena.add(new String("Fixed a bug")));
+        assertFalse(id == arena.add("Fixed a bug."));
+        assertFalse(id == arena.add("fixed a bug"));
+    }
+
+    @Test
+    public void stringsWithSameHashCode() {
+        StringArena arena = new StringArena();
+        // "Aa" and "BB" have the same hash code
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        int aa = arena.add("Aa");
+        int bb = arena.add("BB");
+
+        assertFalse(aa == bb);
+        assertEquals("Aa", arena.get(aa));
+        assertEquals("BB", arena.get(bb));
+        assertEquals(aa, arena.add("Aa"));
+        assertEquals(bb, arena.add("BB"));
+    }
+
+    @Test
+    public void growBeyondInitialCapacity() {
+        StringArena arena = new StringArena();
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            strings.add("Change number " + i);
+        }
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longString.append("long ");
+        }
+        strings.add(longString.toString());
+
+        int[] ids = new int[strings.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = arena.add(strings.get(i));
+        }
+
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(strings.get(i), arena.get(ids[i]));
+            assertEquals(ids[i], arena.add(strings.get(i)));
+        }
+    }
+
+    @Test
+    public void copyOf() {
+        StringArena arena = new StringArena();
+        List<String> master = arena.copyOf(Arrays.asList("a", "b", null, "a"));
+        List<String> localized = arena.copyOf(Arrays.asList("b", "c"));
+
+        assertEquals(Arrays.asList("a", "b", null, "a"), master);
+        assertEquals(Arrays.asList("b", "c"), localized);
+    }
+
+    @Test
+    public void copyOfIsReadOnly() {
+        List<String> strings = new StringArena().copyOf(Arrays.asList("a", "b"));
+
+        try {
+            strings.set(0, "c");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        try {
+            strings.add("c");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void concurrentAdds() throws Exception {
+        final StringArena arena = new StringArena();
+        final int stringCount = 2000;
+        final int[][] ids = new int[4][stringCount];
+
+        Thread[] threads = new Thread[ids.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int[] threadIds = ids[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < stringCount; i++) {
+                        threadIds[i] = arena.add("Change " + i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < stringCount; i++) {
+            assertEquals("Change " + i, arena.get(ids[0][i]));
+            for (int t = 1; t < ids.length; t++) {
+                assertEquals(ids[0][i], ids[t][i]);
+            }
+        }
+    }
+}
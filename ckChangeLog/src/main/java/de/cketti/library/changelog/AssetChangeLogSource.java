@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+
+/**
+ * {@link ChangeLogSource} reading a change log XML file from the app's assets.
+ *
+ * <p>
+ * Assets that are stored uncompressed in the APK are memory-mapped. This includes files ending in
+ * {@code .gz}, which are decompressed while they are parsed. Other assets are streamed.
+ * </p>
+ *
+ * @see ChangeLog#readChangeLogFromSource(ChangeLogSource, boolean)
+ * @see ChangeLog#scanChangeLogFromSource(ChangeLogSource, boolean)
+ */
+public final class AssetChangeLogSource extends ChangeLogSource {
+    private final AssetManager mAssets;
+    private final String mPath;
+
+
+    /**
+     * Create an {@code AssetChangeLogSource} instance.
+     *
+     * @param path
+     *         The path of the asset, e.g. {@code "changelog.xml.gz"}.
+     */
+    public AssetChangeLogSource(Context context, String path) {
+        mAssets = context.getAssets();
+        mPath = path;
+    }
+
+    @Override
+    protected InputStream openStream() throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = mAssets.openFd(mPath);
+        } catch (FileNotFoundException e) {
+            // Compressed assets can't be opened as file descriptor
+            return mAssets.open(mPath, AssetManager.ACCESS_STREAMING);
+        }
+
+        try {
+            FileInputStream in = fd.createInputStream();
+            return map(in.getChannel(), fd.getStartOffset(), fd.getLength());
+        } finally {
+            // The mapping stays valid after the file descriptor has been closed
+            fd.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "asset:" + mPath;
+    }
+}
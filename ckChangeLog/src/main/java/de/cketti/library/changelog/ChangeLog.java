@@ -33,26 +33,54 @@
  */
 package de.cketti.library.changelog;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlPullParserException;
 
+import android.annotation.TargetApi;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
+import android.os.Build;
 import android.preference.PreferenceManager;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
 import android.webkit.WebView;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+
+import de.cketti.library.changelog.ChangeLogMetrics.Cache;
+import de.cketti.library.changelog.ChangeLogMetrics.Phase;
+import de.cketti.library.changelog.ChangeLogMetrics.PhaseTimer;
 
 
 /**
@@ -75,6 +103,30 @@ public class ChangeLog {
      */
     protected static final int NO_VERSION = -1;
 
+    /**
+     * Default number of releases per page if {@link #isPagingEnabled()} returns {@code true}.
+     */
+    protected static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Default sort order of {@link ReleaseItem}s (latest version first).
+     *
+     * @see #getChangeLogComparator()
+     */
+    private static final Comparator<ReleaseItem> LATEST_VERSION_FIRST =
+            new Comparator<ReleaseItem>() {
+                @Override
+                public int compare(ReleaseItem lhs, ReleaseItem rhs) {
+                    if (lhs.versionCode < rhs.versionCode) {
+                        return 1;
+                    } else if (lhs.versionCode > rhs.versionCode) {
+                        return -1;
+                    } else {
+                        return 0;
+                    }
+                }
+            };
+
     /**
      * Default CSS styles used to format the change log.
      */
@@ -84,6 +136,38 @@ public class ChangeLog {
             "ul { padding-left: 2em; }";
 
 
+    /**
+     * Executor returned by the default implementation of {@link #getParsingExecutor()}.
+     */
+    private static ExecutorService sParsingExecutor;
+
+    /**
+     * Collapses concurrent calls of {@link #getReleaseIndex(boolean)} for the same change log.
+     */
+    private static final SingleFlight<ReleaseIndex> sReleaseIndexLoads =
+            new SingleFlight<ReleaseIndex>();
+
+    /**
+     * Collapses concurrent calls of {@link #getLog(boolean)} for the same change log.
+     */
+    private static final SingleFlight<String> sLogLoads = new SingleFlight<String>();
+
+    /**
+     * The class declaring the parsing methods used by instances of a {@code ChangeLog} class.
+     *
+     * @see #getParsingClass(Class)
+     */
+    private static final Map<Class<?>, Class<?>> sParsingClasses =
+            new HashMap<Class<?>, Class<?>>();
+
+    /**
+     * The change log dialog that is currently displayed. Only accessed on the main thread.
+     *
+     * @see #getVisibleDialog(boolean, String)
+     */
+    private static VisibleDialog sVisibleDialog;
+
+
     /**
      * Context that is used to access the resources and to create the ChangeLog dialogs.
      */
@@ -95,7 +179,12 @@ public class ChangeLog {
     protected final String mCss;
 
     /**
-     * Last version code read from {@code SharedPreferences} or {@link #NO_VERSION}.
+     * Used to persist the last version code.
+     */
+    private final VersionStore mVersionStore;
+
+    /**
+     * Last version code read from the {@link VersionStore} or {@link #NO_VERSION}.
      */
     private int mLastVersionCode;
 
@@ -109,6 +198,24 @@ public class ChangeLog {
      */
     private String mCurrentVersionName;
 
+    /**
+     * Time the current installation was last updated or {@code 0} if not available.
+     */
+    private long mLastUpdateTime;
+
+    /**
+     * Storage for the change texts if {@link #isCompactStorageEnabled()} returns {@code true}.
+     * Shared by the master and the localized change log.
+     */
+    private StringArena mStringArena;
+
+    /**
+     * The {@code Resources} of the locale chain. Created on first use.
+     *
+     * @see #getLocalizedResources()
+     */
+    private List<Resources> mLocalizedResources;
+
 
     /**
      * Contains constants for the root element of {@code changelog.xml}.
@@ -168,22 +275,44 @@ public class ChangeLog {
      *
      */
     public ChangeLog(Context context, SharedPreferences preferences, String css) {
+        this(context, new PreferencesVersionStore(preferences), css);
+    }
+
+    /**
+     * Create a {@code ChangeLog} instance using the supplied {@code VersionStore} instance.
+     *
+     * @param context
+     *         Context that is used to access the resources and to create the ChangeLog dialogs.
+     * @param versionStore
+     *         {@code VersionStore} instance that is used to persist the last version code.
+     * @param css
+     *         CSS styles used to format the change log (excluding {@code <style>} and
+     *         {@code </style>}).
+     */
+    public ChangeLog(Context context, VersionStore versionStore, String css) {
         mContext = context;
         mCss = css;
+        mVersionStore = versionStore;
 
         // Get last version code
-        mLastVersionCode = preferences.getInt(VERSION_KEY, NO_VERSION);
+        mLastVersionCode = versionStore.getLastVersionCode();
 
         // Get current version code and version name
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.INIT);
         try {
             PackageInfo packageInfo = context.getPackageManager().getPackageInfo(
                     context.getPackageName(), 0);
 
             mCurrentVersionCode = packageInfo.versionCode;
             mCurrentVersionName = packageInfo.versionName;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+                mLastUpdateTime = packageInfo.lastUpdateTime;
+            }
         } catch (NameNotFoundException e) {
             mCurrentVersionCode = NO_VERSION;
             Log.e(LOG_TAG, "Could not get version information from manifest!", e);
+        } finally {
+            timer.end();
         }
     }
 
@@ -242,6 +371,101 @@ public class ChangeLog {
         return mLastVersionCode == NO_VERSION;
     }
 
+    /**
+     * Check if the change log contains releases the user hasn't seen yet.
+     *
+     * <p>
+     * Unlike {@link #isFirstRun()} this returns {@code false} if the app version changed but the
+     * change log has no entries for the new version. The change log doesn't have to be read for
+     * this. See {@link #getLatestVersionCode()}.
+     * </p>
+     *
+     * @return {@code true} if {@link #getLogDialog()} would display at least one release.
+     */
+    public boolean hasUnseenChanges() {
+        return isFirstRun() && getLatestVersionCode() > mLastVersionCode;
+    }
+
+    /**
+     * Returns the version code of the latest release in the master change logs.
+     *
+     * <p>
+     * The default implementation reads the header of the compiled change log or the first
+     * {@code release} element of {@code changelog_master.xml}, and the first {@code release}
+     * element of the master change log of each module (see {@link #getModules()}). The highest
+     * version code is stored in a {@code SharedPreferences} file and reused until the app is
+     * updated. Subclasses that read the change log from other sources should override this
+     * method.
+     * </p>
+     *
+     * @return The version code of the latest release or {@link Integer#MIN_VALUE} if the change
+     *         log doesn't contain any releases.
+     *
+     * @see #hasUnseenChanges()
+     */
+    protected int getLatestVersionCode() {
+        Integer latestVersionCode =
+                LatestVersionCache.get(mContext, mCurrentVersionCode, mLastUpdateTime);
+        if (latestVersionCode != null) {
+            return latestVersionCode;
+        }
+
+        int versionCode = readLatestVersionCode();
+        LatestVersionCache.put(mContext, mCurrentVersionCode, mLastUpdateTime, versionCode);
+
+        return versionCode;
+    }
+
+    private int readLatestVersionCode() {
+        int versionCode = readAppLatestVersionCode();
+
+        // A release can consist of module changes only
+        for (ChangeLogModule module : getModules()) {
+            try {
+                versionCode = Math.max(versionCode, readLatestVersionCode(module.getMasterResId()));
+            } catch (Resources.NotFoundException e) {
+                Log.w(LOG_TAG, "Change log of module not found", e);
+            }
+        }
+
+        return versionCode;
+    }
+
+    private int readAppLatestVersionCode() {
+        InputStream in = mContext.getResources().openRawResource(R.raw.changelog_master_index);
+        try {
+            Integer versionCode = CompiledChangeLog.readLatestVersionCode(in);
+            if (versionCode != null) {
+                return versionCode;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading compiled change log", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        return readLatestVersionCode(R.xml.changelog_master);
+    }
+
+    private int readLatestVersionCode(int resId) {
+        // Releases are listed latest version first, so the first one is all we need
+        XmlResourceParser xml = mContext.getResources().getXml(resId);
+        try {
+            ReleaseItem release = new XmlReleaseReader<ReleaseItem>(xml, ReleaseItem.FACTORY,
+                    ReleaseReader.ALL_VERSIONS).next();
+            return (release != null) ? release.versionCode : Integer.MIN_VALUE;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return Integer.MIN_VALUE;
+        } finally {
+            xml.close();
+        }
+    }
+
     /**
      * Skip the "What's new" dialog for this app version.
      *
@@ -281,320 +505,2159 @@ public class ChangeLog {
      *         If this is {@code true} the full change log is displayed. Otherwise only changes for
      *         versions newer than the last version are displayed.
      *
-     * @return A dialog containing the (partial) change log.
+     * @return A dialog containing the (partial) change log. If a dialog displaying the same change
+     *         log (see {@link #getHtmlCacheKey(boolean)}) created for the same {@code Context} is
+     *         currently displayed, that dialog is returned.
      */
     protected AlertDialog getDialog(boolean full) {
-        WebView wv = new WebView(mContext);
-        //wv.setBackgroundColor(0); // transparent
-        wv.loadDataWithBaseURL(null, getLog(full), "text/html", "UTF-8", null);
-
-        AlertDialog.Builder builder = new AlertDialog.Builder(mContext);
-        builder.setTitle(
-                mContext.getResources().getString(
-                        full ? R.string.changelog_full_title : R.string.changelog_title))
-                .setView(wv)
-                .setCancelable(false)
-                // OK button
-                .setPositiveButton(
-                        mContext.getResources().getString(R.string.changelog_ok_button),
-                        new DialogInterface.OnClickListener() {
-                            @Override
-                            public void onClick(DialogInterface dialog, int which) {
-                                // The user clicked "OK" so save the current version code as
-                                // "last version code".
-                                updateVersionInPreferences();
-                            }
-                        });
+        AlertDialog visibleDialog = getVisibleDialog(full, null);
+        if (visibleDialog != null) {
+            return visibleDialog;
+        }
 
-        if (!full) {
-            // Show "More…" button if we're only displaying a partial change log.
-            builder.setNegativeButton(R.string.changelog_show_full,
-                    new DialogInterface.OnClickListener() {
-                        @Override
-                        public void onClick(DialogInterface dialog, int id) {
-                            getFullLogDialog().show();
-                        }
-                    });
+        if (isListViewEnabled()) {
+            return getListDialog(full, getChangeLog(full));
+        } else if (full && isPagingEnabled()) {
+            return getPagedDialog();
         }
 
-        return builder.create();
+        return getDialog(full, getLog(full));
     }
 
     /**
-     * Write current version code to the preferences.
+     * Create a dialog displaying an already rendered (partial) change log.
+     *
+     * @param full
+     *         If this is {@code true} the dialog is set up to display the full change log.
+     *         Otherwise it is set up to display only the changes since the last version.
+     * @param log
+     *         The (partial) change log as returned by {@link #getLog(boolean)}.
+     *
+     * @return A dialog containing the (partial) change log. If a dialog displaying the same
+     *         {@code log} created for the same {@code Context} is currently displayed, that dialog
+     *         is returned.
+     *
+     * @see ChangeLogLoader
      */
-    protected void updateVersionInPreferences() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
-        SharedPreferences.Editor editor = sp.edit();
-        editor.putInt(VERSION_KEY, mCurrentVersionCode);
+    protected AlertDialog getDialog(boolean full, String log) {
+        AlertDialog visibleDialog = getVisibleDialog(full, log);
+        if (visibleDialog != null) {
+            return visibleDialog;
+        }
+
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.CREATE_DIALOG);
+        try {
+            WebViewPool pool = getWebViewPool();
+            WebViewPool.Lease lease = (pool != null) ? pool.acquire(mContext) : null;
+
+            WebView wv = (lease != null) ? lease.getWebView() : new WebView(mContext);
+            //wv.setBackgroundColor(0); // transparent
+            wv.loadDataWithBaseURL(null, log, "text/html", "UTF-8", null);
 
-        // TODO: Update preferences from a background thread
-        editor.commit();
+            return createDialog(full, log, wv, lease, null);
+        } finally {
+            timer.end();
+        }
     }
 
     /**
-     * Get changes since last version as HTML string.
+     * Create a dialog displaying the full change log one page at a time.
      *
-     * @return HTML string containing the changes since the previous installed version of your app
-     *         (What's New).
+     * @see #isPagingEnabled()
      */
-    public String getLog() {
-        return getLog(false);
+    private AlertDialog getPagedDialog() {
+        ChangeLogPager pager = createPager();
+        return getPagedDialog(pager, renderFirstPage(pager));
     }
 
     /**
-     * Get full change log as HTML string.
+     * Open the full change log for displaying it one page at a time.
      *
-     * @return HTML string containing the full change log.
+     * @see #renderFirstPage(ChangeLogPager)
+     * @see #getPagedDialog(ChangeLogPager, String)
      */
-    public String getFullLog() {
-        return getLog(true);
+    ChangeLogPager createPager() {
+        return new ChangeLogPager(openChangeLog(ReleaseReader.ALL_VERSIONS, Integer.MAX_VALUE),
+                createHtmlRenderer(), getPageSize(), ChangeLogLoader.getDefaultExecutor());
     }
 
     /**
-     * Get (partial) change log as HTML string.
-     *
-     * @param full
-     *         If this is {@code true} the full change log is returned. Otherwise only changes for
-     *         versions newer than the last version are returned.
-     *
-     * @return The (partial) change log.
+     * Read and render the first page of the change log. This may be called on a background
+     * thread.
      */
-    protected String getLog(boolean full) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("<html><head><style type=\"text/css\">");
-        sb.append(mCss);
-        sb.append("</style></head><body>");
-
-        String versionFormat = mContext.getResources().getString(R.string.changelog_version_format);
-
-        List<ReleaseItem> changelog = getChangeLog(full);
-
-        for (ReleaseItem release : changelog) {
-            sb.append("<h1>");
-            sb.append(String.format(versionFormat, release.versionName));
-            sb.append("</h1><ul>");
-            for (String change : release.changes) {
-                sb.append("<li>");
-                sb.append(change);
-                sb.append("</li>");
-            }
-            sb.append("</ul>");
+    String renderFirstPage(ChangeLogPager pager) {
+        String firstPage;
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.RENDER);
+        try {
+            firstPage = pager.renderFirstPage();
+        } finally {
+            timer.end();
         }
+        ChangeLogMetrics.logRendered(firstPage);
 
-        sb.append("</body></html>");
-
-        return sb.toString();
+        return firstPage;
     }
 
     /**
-     * Returns the merged change log.
-     *
-     * @param full
-     *         If this is {@code true} the full change log is returned. Otherwise only changes for
-     *         versions newer than the last version are returned.
+     * Create a dialog displaying the first page rendered by {@code pager} and loading the
+     * following pages while the user scrolls.
      *
-     * @return A sorted {@code List} containing {@link ReleaseItem}s representing the (partial)
-     *         change log.
+     * @return The paged dialog. If a dialog displaying the full change log created for the same
+     *         {@code Context} is currently displayed, that dialog is returned and {@code pager} is
+     *         closed.
      *
-     * @see #getChangeLogComparator()
+     * @see ChangeLogLoader
      */
-    public List<ReleaseItem> getChangeLog(boolean full) {
-        SparseArray<ReleaseItem> masterChangelog = getMasterChangeLog(full);
-        SparseArray<ReleaseItem> changelog = getLocalizedChangeLog(full);
-
-        List<ReleaseItem> mergedChangeLog =
-                new ArrayList<ReleaseItem>(masterChangelog.size());
+    AlertDialog getPagedDialog(ChangeLogPager pager, String firstPage) {
+        AlertDialog visibleDialog = getVisibleDialog(true, null);
+        if (visibleDialog != null) {
+            pager.close();
+            return visibleDialog;
+        }
 
-        for (int i = 0, len = masterChangelog.size(); i < len; i++) {
-            int key = masterChangelog.keyAt(i);
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.CREATE_DIALOG);
+        try {
+            WebViewPool pool = getWebViewPool();
+            WebViewPool.Lease lease = (pool != null) ? pool.acquire(mContext) : null;
 
-            // Use release information from localized change log and fall back to the master file
-            // if necessary.
-            ReleaseItem release = changelog.get(key, masterChangelog.get(key));
+            WebView wv = (lease != null) ? lease.getWebView() : new WebView(mContext);
+            pager.attach(wv, firstPage);
 
-            mergedChangeLog.add(release);
+            return createDialog(true, null, wv, lease, pager);
+        } finally {
+            timer.end();
         }
-
-        Collections.sort(mergedChangeLog, getChangeLogComparator());
-
-        return mergedChangeLog;
     }
 
     /**
-     * Read master change log from {@code xml/changelog_master.xml}
+     * Whether {@link #getFullLogDialog()} initially only displays the latest releases and loads
+     * older releases while the user scrolls.
      *
-     * @see #readChangeLogFromResource(int, boolean)
+     * <p>
+     * The default implementation returns {@code false}. Subclasses can return {@code true} to
+     * display long change logs faster. Then only the first {@link #getPageSize()} releases are
+     * read and rendered before the dialog is displayed, and JavaScript is enabled in the
+     * {@link WebView}. The releases are always displayed latest version first.
+     * </p>
+     *
+     * <p>
+     * This only applies to dialogs created by {@link #getFullLogDialog()} and
+     * {@link #getLogDialog()}, and not if {@link #isListViewEnabled()} returns {@code true}.
+     * </p>
      */
-    protected SparseArray<ReleaseItem> getMasterChangeLog(boolean full) {
-        return readChangeLogFromResource(R.xml.changelog_master, full);
+    protected boolean isPagingEnabled() {
+        return false;
     }
 
     /**
-     * Read localized change log from {@code xml[-lang]/changelog.xml}
-     *
-     * @see #readChangeLogFromResource(int, boolean)
+     * Returns the number of releases rendered at a time if {@link #isPagingEnabled()} returns
+     * {@code true}.
      */
-    protected SparseArray<ReleaseItem> getLocalizedChangeLog(boolean full) {
-        return readChangeLogFromResource(R.xml.changelog, full);
+    protected int getPageSize() {
+        return DEFAULT_PAGE_SIZE;
     }
 
     /**
-     * Read change log from XML resource file.
+     * Create a dialog displaying the (partial) change log in a {@link ListView}.
+     *
+     * <p>
+     * Only the rows that are visible on screen are created, so this scales to change logs with
+     * thousands of entries. Note that the CSS styles passed to the constructor are not used.
+     * </p>
      *
-     * @param resId
-     *         Resource ID of the XML file to read the change log from.
      * @param full
-     *         If this is {@code true} the full change log is returned. Otherwise only changes for
-     *         versions newer than the last version are returned.
+     *         If this is {@code true} the dialog is set up to display the full change log.
+     *         Otherwise it is set up to display only the changes since the last version.
+     * @param changelog
+     *         The (partial) change log as returned by {@link #getChangeLog(boolean)}.
      *
-     * @return A {@code SparseArray} containing {@link ReleaseItem}s representing the (partial)
-     *         change log.
+     * @return A dialog containing the (partial) change log. If a dialog displaying the same change
+     *         log (see {@link #getHtmlCacheKey(boolean)}) created for the same {@code Context} is
+     *         currently displayed, that dialog is returned.
+     *
+     * @see #isListViewEnabled()
      */
-    protected final SparseArray<ReleaseItem> readChangeLogFromResource(int resId, boolean full) {
-        XmlResourceParser xml = mContext.getResources().getXml(resId);
+    protected AlertDialog getListDialog(boolean full, List<ReleaseItem> changelog) {
+        AlertDialog visibleDialog = getVisibleDialog(full, null);
+        if (visibleDialog != null) {
+            return visibleDialog;
+        }
+
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.CREATE_DIALOG);
         try {
-            return readChangeLog(xml, full);
+            ListView listView = new ListView(mContext);
+            ChangeLogAdapter adapter = new ChangeLogAdapter(mContext, changelog);
+            listView.setAdapter(adapter);
+
+            View view = listView;
+            if (isSearchEnabled()) {
+                adapter.setSearchIndex(startSearchIndexTask());
+                view = createSearchView(listView, adapter);
+            }
+
+            return createDialog(full, view);
         } finally {
-            xml.close();
+            timer.end();
         }
     }
 
     /**
-     * Read the change log from an XML file.
-     *
-     * @param xml
-     *         The {@code XmlPullParser} instance used to read the change log.
-     * @param full
-     *         If {@code true} the full change log is read. Otherwise only the changes since the
-     *         last (saved) version are read.
-     *
-     * @return A {@code SparseArray} mapping the version codes to release information.
+     * Build the search index on the default background thread of {@link ChangeLogLoader}.
      */
-    protected SparseArray<ReleaseItem> readChangeLog(XmlPullParser xml, boolean full) {
-        SparseArray<ReleaseItem> result = new SparseArray<ReleaseItem>();
-
-        try {
-            int eventType = xml.getEventType();
-            while (eventType != XmlPullParser.END_DOCUMENT) {
-                if (eventType == XmlPullParser.START_TAG && xml.getName().equals(ReleaseTag.NAME)) {
-                    if (parseReleaseTag(xml, full, result)) {
-                        // Stop reading more elements if this entry is not newer than the last
-                        // version.
-                        break;
+    private FutureTask<SearchIndex> startSearchIndexTask() {
+        FutureTask<SearchIndex> task = new FutureTask<SearchIndex>(
+                new Callable<SearchIndex>() {
+                    @Override
+                    public SearchIndex call() {
+                        return getSearchIndex();
                     }
-                }
-                eventType = xml.next();
-            }
-        } catch (XmlPullParserException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-        }
+                });
+        ChangeLogLoader.getDefaultExecutor().execute(task);
 
-        return result;
+        return task;
     }
 
     /**
-     * Parse the {@code release} tag of a change log XML file.
-     *
-     * @param xml
-     *         The {@code XmlPullParser} instance used to read the change log.
-     * @param full
-     *         If {@code true} the contents of the {@code release} tag are always added to
-     *         {@code changelog}. Otherwise only if the item's {@code versioncode} attribute is
-     *         higher than the last version code.
-     * @param changelog
-     *         The {@code SparseArray} to add a new {@link ReleaseItem} instance to.
-     *
-     * @return {@code true} if the {@code release} element is describing changes of a version older
-     *         or equal to the last version. In that case {@code changelog} won't be modified and
-     *         {@link #readChangeLog(XmlPullParser, boolean)} will stop reading more elements from
-     *         the change log file.
-     *
-     * @throws XmlPullParserException
-     * @throws IOException
+     * Put a search field above the {@code ListView} that filters the displayed changes while the
+     * user types.
      */
-    private boolean parseReleaseTag(XmlPullParser xml, boolean full,
-            SparseArray<ReleaseItem> changelog) throws XmlPullParserException, IOException {
+    private View createSearchView(ListView listView, final ChangeLogAdapter adapter) {
+        EditText searchField = new EditText(mContext);
+        searchField.setSingleLine(true);
+        searchField.setHint(R.string.changelog_search_hint);
+        searchField.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                // Do nothing
+            }
 
-        String version = xml.getAttributeValue(null, ReleaseTag.ATTRIBUTE_VERSION);
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                // Do nothing
+            }
 
-        int versionCode;
-        try {
-            String versionCodeStr = xml.getAttributeValue(null, ReleaseTag.ATTRIBUTE_VERSION_CODE);
-            versionCode = Integer.parseInt(versionCodeStr);
-        } catch (NumberFormatException e) {
-            versionCode = NO_VERSION;
-        }
+            @Override
+            public void afterTextChanged(Editable s) {
+                adapter.getFilter().filter(s.toString());
+            }
+        });
 
-        if (!full && versionCode <= mLastVersionCode) {
-            return true;
-        }
+        LinearLayout layout = new LinearLayout(mContext);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.addView(searchField, new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.FILL_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        layout.addView(listView, new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.FILL_PARENT, 0, 1));
 
-        int eventType = xml.getEventType();
-        List<String> changes = new ArrayList<String>();
-        while (eventType != XmlPullParser.END_TAG || xml.getName().equals(ChangeTag.NAME)) {
-            if (eventType == XmlPullParser.START_TAG && xml.getName().equals(ChangeTag.NAME)) {
-                eventType = xml.next();
+        return layout;
+    }
 
-                changes.add(xml.getText());
-            }
-            eventType = xml.next();
+    /**
+     * Whether the {@link ListView} change log dialogs display a search field.
+     *
+     * <p>
+     * The default implementation returns {@code false}. Subclasses can return {@code true} to let
+     * users filter the change log. The search index is built in the background when the dialog is
+     * created, see {@link #getSearchIndex()}.
+     * </p>
+     *
+     * @see #isListViewEnabled()
+     */
+    protected boolean isSearchEnabled() {
+        return false;
+    }
+
+    /**
+     * Whether the change log dialogs display the change log in a {@link ListView} instead of a
+     * {@link WebView}.
+     *
+     * <p>
+     * Creating a {@code WebView} is expensive, especially the first time in a process. The
+     * default implementation returns {@code false}, so the CSS styles passed to the constructor
+     * are used. Subclasses can return {@code true} to use the lighter-weight
+     * {@link ChangeLogAdapter}.
+     * </p>
+     *
+     * @see #getListDialog(boolean, List)
+     */
+    protected boolean isListViewEnabled() {
+        return false;
+    }
+
+    /**
+     * Get the pool the {@link WebView}s of the change log dialogs are taken from.
+     *
+     * <p>
+     * The default implementation returns {@code null}, i.e. every dialog creates a new
+     * {@code WebView}. Subclasses can return {@link WebViewPool#getInstance(Context)} to reuse
+     * {@code WebView}s across dialogs and {@code ChangeLog} instances. The {@code WebView} of a
+     * dialog is returned to the pool when the dialog is dismissed. The "More…" button hands it
+     * over to the full change log dialog. Call {@link WebViewPool#prewarm()} to create the
+     * {@code WebView} before the first dialog is displayed.
+     * </p>
+     */
+    protected WebViewPool getWebViewPool() {
+        return null;
+    }
+
+    /**
+     * Get the change log dialog that is currently displayed, if it can be reused.
+     *
+     * <p>
+     * Several entry points (e.g. the check on app start and a menu item) can request a change log
+     * dialog at about the same time. A visible dialog is reused if it was created for the same
+     * {@code Context} and displays the same change log, i.e. {@link #getHtmlCacheKey(boolean)}
+     * returns the same key. To display at most one change log dialog at a time, showing a new
+     * dialog dismisses the visible one.
+     * </p>
+     *
+     * @param log
+     *         The rendered change log the dialog has to display or {@code null} if any rendering of
+     *         the change log will do.
+     *
+     * @return The visible dialog or {@code null} if a new dialog has to be created.
+     */
+    private AlertDialog getVisibleDialog(boolean full, String log) {
+        VisibleDialog visibleDialog = sVisibleDialog;
+        AlertDialog dialog = (visibleDialog != null) ? visibleDialog.dialog.get() : null;
+        if (dialog == null || !dialog.isShowing() || visibleDialog.context.get() != mContext) {
+            return null;
+        }
+
+        if (!visibleDialog.key.equals(getHtmlCacheKey(full)) ||
+                (log != null && !log.equals(visibleDialog.log))) {
+            return null;
+        }
+
+        return dialog;
+    }
+
+    /**
+     * Record the dialog that is displayed and dismiss the previously displayed change log dialog.
+     */
+    private static void setVisibleDialog(VisibleDialog visibleDialog) {
+        VisibleDialog previous = sVisibleDialog;
+        sVisibleDialog = visibleDialog;
+
+        AlertDialog previousDialog = (previous != null) ? previous.dialog.get() : null;
+        if (previousDialog != null && previousDialog != visibleDialog.dialog.get() &&
+                previousDialog.isShowing()) {
+            previousDialog.dismiss();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.FROYO)
+    private static void setOnShowListener(AlertDialog dialog, final VisibleDialog visibleDialog) {
+        dialog.setOnShowListener(new DialogInterface.OnShowListener() {
+            @Override
+            public void onShow(DialogInterface dialog) {
+                setVisibleDialog(visibleDialog);
+            }
+        });
+    }
+
+    private AlertDialog createDialog(boolean full, View view) {
+        return createDialog(full, null, view, null, null);
+    }
+
+    /**
+     * Create a change log dialog.
+     *
+     * @param log
+     *         The rendered change log displayed in the dialog or {@code null} if it's displayed
+     *         page by page or in a {@link ListView}.
+     * @param lease
+     *         The lease of the pooled {@code WebView} displayed in the dialog or {@code null}. It's
+     *         released when the dialog is dismissed.
+     * @param pager
+     *         The pager loading the displayed change log or {@code null}. It's detached when the
+     *         dialog is dismissed.
+     */
+    private AlertDialog createDialog(boolean full, String log, View view,
+            final WebViewPool.Lease lease, final ChangeLogPager pager) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(mContext);
+        builder.setTitle(
+                mContext.getResources().getString(
+                        full ? R.string.changelog_full_title : R.string.changelog_title))
+                .setView(view)
+                .setCancelable(false)
+                // OK button
+                .setPositiveButton(
+                        mContext.getResources().getString(R.string.changelog_ok_button),
+                        new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                // The user clicked "OK" so save the current version code as
+                                // "last version code".
+                                updateVersionInPreferences();
+                            }
+                        });
+
+        if (!full) {
+            // Show "More…" button if we're only displaying a partial change log.
+            builder.setNegativeButton(R.string.changelog_show_full,
+                    new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int id) {
+                            if (lease != null) {
+                                // Let the full change log dialog reuse the WebView
+                                lease.release();
+                            }
+                            getFullLogDialog().show();
+                        }
+                    });
+        }
+
+        AlertDialog dialog = builder.create();
+        final VisibleDialog visibleDialog =
+                new VisibleDialog(dialog, mContext, getHtmlCacheKey(full), log);
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                if (sVisibleDialog == visibleDialog) {
+                    sVisibleDialog = null;
+                }
+                if (pager != null) {
+                    pager.detach();
+                }
+                if (lease != null) {
+                    lease.release();
+                }
+            }
+        });
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+            setOnShowListener(dialog, visibleDialog);
+        } else {
+            // There's no way to find out when the dialog is shown
+            setVisibleDialog(visibleDialog);
+        }
+
+        return dialog;
+    }
+
+    /**
+     * Write current version code to the {@link VersionStore}.
+     *
+     * <p>
+     * Depending on the {@code VersionStore} implementation the value is persisted asynchronously.
+     * Use {@link #flushVersionStore()} to wait for the write to complete.
+     * </p>
+     */
+    protected void updateVersionInPreferences() {
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.SAVE_VERSION);
+        try {
+            mVersionStore.setLastVersionCode(mCurrentVersionCode);
+        } finally {
+            timer.end();
+        }
+    }
+
+    /**
+     * Block until the current version code has been persisted by the {@link VersionStore}.
+     */
+    public void flushVersionStore() {
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.SAVE_VERSION);
+        try {
+            mVersionStore.flush();
+        } finally {
+            timer.end();
+        }
+    }
+
+    /**
+     * Get changes since last version as HTML string.
+     *
+     * @return HTML string containing the changes since the previous installed version of your app
+     *         (What's New).
+     */
+    public String getLog() {
+        return getLog(false);
+    }
+
+    /**
+     * Get full change log as HTML string.
+     *
+     * @return HTML string containing the full change log.
+     */
+    public String getFullLog() {
+        return getLog(true);
+    }
+
+    /**
+     * Get (partial) change log as HTML string.
+     *
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     *
+     * <p>
+     * Concurrent calls for the same change log, i.e. with the same
+     * {@link #getHtmlCacheKey(boolean)}, share one computation.
+     * </p>
+     *
+     * @return The (partial) change log.
+     */
+    protected String getLog(final boolean full) {
+        return sLogLoads.execute(getHtmlCacheKey(full), new Callable<String>() {
+            @Override
+            public String call() {
+                return loadLog(full);
+            }
+        });
+    }
+
+    /**
+     * Get the rendered change log from the {@link HtmlCache} or render it.
+     */
+    private String loadLog(boolean full) {
+        HtmlCache htmlCache = getHtmlCache();
+        if (htmlCache == null) {
+            return renderLog(full);
+        }
+
+        String cacheKey = getHtmlCacheKey(full);
+        String log = htmlCache.get(cacheKey);
+        ChangeLogMetrics.cacheLookup(Cache.HTML, log != null);
+        if (log == null) {
+            log = renderLog(full);
+            htmlCache.put(cacheKey, log);
+        }
+
+        return log;
+    }
+
+    /**
+     * Get the cache used to store rendered change logs on disk.
+     *
+     * <p>
+     * The default implementation returns {@code null}, i.e. the change log is rendered every
+     * time. Subclasses can enable the cache by returning e.g.
+     * {@link HtmlCache#getInstance(Context)}. Only do this if the change log doesn't change without
+     * a change of the app version.
+     * </p>
+     *
+     * @see #getHtmlCacheKey(boolean)
+     */
+    protected HtmlCache getHtmlCache() {
+        return null;
+    }
+
+    /**
+     * Get the key used to store the rendered change log in the {@link HtmlCache}.
+     *
+     * <p>
+     * It includes everything the output of {@link #getLog(boolean)} depends on: the class
+     * rendering the change log, the installed app version, the locale, the CSS styles and, for
+     * partial change logs, the last version code. Subclasses that render additional data should
+     * override this method and include that data in the key.
+     * </p>
+     *
+     * @param full
+     *         {@code true} for the key of the full change log, {@code false} for the key of the
+     *         changes since the last version.
+     */
+    protected String getHtmlCacheKey(boolean full) {
+        return HtmlCache.createKey(
+                getClass().getName(),
+                mCurrentVersionCode,
+                mCurrentVersionName,
+                mLastUpdateTime,
+                mContext.getResources().getConfiguration().locale,
+                mCss,
+                full,
+                full ? NO_VERSION : mLastVersionCode);
+    }
+
+    /**
+     * Render the (partial) change log as HTML string.
+     */
+    private String renderLog(boolean full) {
+        List<ReleaseItem> changelog = getChangeLog(full);
+
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.RENDER);
+        StringBuilder sb = new StringBuilder();
+        try {
+            createHtmlRenderer().render(sb, changelog);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw IOException
+            throw new RuntimeException(e);
+        } finally {
+            timer.end();
+        }
+        ChangeLogMetrics.logRendered(sb);
+
+        return sb.toString();
+    }
+
+    /**
+     * Write changes since last version as HTML to {@code out}.
+     *
+     * @see #writeLog(Appendable, boolean)
+     */
+    public void writeLog(Appendable out) throws IOException {
+        writeLog(out, false);
+    }
+
+    /**
+     * Write full change log as HTML to {@code out}.
+     *
+     * @see #writeLog(Appendable, boolean)
+     */
+    public void writeFullLog(Appendable out) throws IOException {
+        writeLog(out, true);
+    }
+
+    /**
+     * Write (partial) change log as HTML to {@code out}.
+     *
+     * <p>
+     * Unlike {@link #getLog(boolean)} this doesn't build the whole change log in memory. The
+     * releases are read one at a time from the readers returned by
+     * {@link #openMasterChangeLog(int, int)} and {@link #openLocalizedChangeLog(int, int)} and
+     * written to {@code out} right away.
+     * </p>
+     *
+     * @param out
+     *         The {@code Appendable}, e.g. a {@link java.io.Writer}, to write the change log to.
+     * @param full
+     *         If this is {@code true} the full change log is written. Otherwise only changes for
+     *         versions newer than the last version are written.
+     *
+     * @throws IOException
+     *         If the change log couldn't be read or {@code out} threw an exception.
+     */
+    protected void writeLog(Appendable out, boolean full) throws IOException {
+        // Reading and rendering are interleaved. Both are reported as rendering.
+        ChangeLogMetrics.CountingAppendable countingOut = ChangeLogMetrics.isEnabled() ?
+                new ChangeLogMetrics.CountingAppendable(out) : null;
+
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.RENDER);
+        try {
+            ReleaseReader<ReleaseItem> reader =
+                    openChangeLog(getNewerThan(full), Integer.MAX_VALUE);
+            try {
+                createHtmlRenderer().render((countingOut != null) ? countingOut : out, reader);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            timer.end();
+        }
+
+        if (countingOut != null) {
+            ChangeLogMetrics.logRendered(countingOut);
+        }
+    }
+
+    private HtmlRenderer createHtmlRenderer() {
+        String versionFormat = mContext.getResources().getString(R.string.changelog_version_format);
+        return new HtmlRenderer(mCss, versionFormat);
+    }
+
+    /**
+     * Returns the merged change log.
+     *
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     *
+     * @return A sorted {@code List} containing {@link ReleaseItem}s representing the (partial)
+     *         change log.
+     *
+     * @see #getChangeLogComparator()
+     * @see #getReleaseIndex(boolean)
+     */
+    public List<ReleaseItem> getChangeLog(boolean full) {
+        List<ReleaseItem> mergedChangeLog =
+                new ArrayList<ReleaseItem>(getReleaseIndex(full).asList());
+
+        sortChangeLog(mergedChangeLog);
+
+        return mergedChangeLog;
+    }
+
+    /**
+     * Returns the merged change log as {@link ReleaseIndex}.
+     *
+     * <p>
+     * The releases are always ordered by version code, latest version first. Unlike
+     * {@link #getChangeLog(boolean)} this doesn't copy or sort the releases.
+     * </p>
+     *
+     * <p>
+     * Concurrent calls of instances of the same class for the same app version, locale and last
+     * version code share one read of the change log files.
+     * </p>
+     *
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     */
+    public ReleaseIndex getReleaseIndex(final boolean full) {
+        String key = HtmlCache.createKey(
+                getClass().getName(),
+                mCurrentVersionCode,
+                mLastUpdateTime,
+                mContext.getResources().getConfiguration().locale,
+                isLocaleChainEnabled() ? getLocaleChain() : null,
+                getNewerThan(full));
+
+        return sReleaseIndexLoads.execute(key, new Callable<ReleaseIndex>() {
+            @Override
+            public ReleaseIndex call() {
+                return loadReleaseIndex(full);
+            }
+        });
+    }
+
+    /**
+     * Get the merged change log from the snapshot or read it.
+     */
+    private ReleaseIndex loadReleaseIndex(boolean full) {
+        ReleaseIndex releaseIndex;
+        if (isSnapshotEnabled()) {
+            int newerThan = getNewerThan(full);
+            releaseIndex = getSnapshotReleaseIndex(newerThan);
+            if (newerThan != ReleaseReader.ALL_VERSIONS) {
+                releaseIndex = releaseIndex.newerThan(newerThan);
+            }
+        } else {
+            releaseIndex = readReleaseIndex(full);
+        }
+
+        List<ChangeLogModule> modules = getModules();
+        return modules.isEmpty() ? releaseIndex : addModules(releaseIndex, modules, full);
+    }
+
+    /**
+     * Get the change logs of feature modules and libraries that are merged into the app's change
+     * log.
+     *
+     * <p>
+     * The default implementation returns an empty list. Subclasses of apps built from several
+     * modules can return a {@link ChangeLogModule} for each module. The releases of all modules
+     * and of the app's own change log are merged by version code. Changes of the same version are
+     * combined into one release, in the order of this list, after the app's own changes.
+     * </p>
+     *
+     * <p>
+     * The change log of each module is cached on its own: in memory if
+     * {@link #isSharedCacheEnabled()} returns {@code true}, and in the app's cache directory. The
+     * cached copy is checked against a checksum of the module's XML files. So after an app update
+     * only the modules whose change log changed are read again.
+     * </p>
+     */
+    protected List<ChangeLogModule> getModules() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Combine the app's (partial) change log with the change logs of the modules.
+     */
+    private ReleaseIndex addModules(ReleaseIndex releaseIndex, List<ChangeLogModule> modules,
+            boolean full) {
+        ReleaseReader<ReleaseItem> reader = openModules(
+                releaseIndex.newReader(ReleaseReader.ALL_VERSIONS, Integer.MAX_VALUE), modules,
+                getNewerThan(full), Integer.MAX_VALUE);
+
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.MERGE);
+        List<ReleaseItem> releases = new ArrayList<ReleaseItem>(releaseIndex.size());
+        try {
+            ReleaseItem release;
+            while ((release = reader.next()) != null) {
+                releases.add(release);
+            }
+        } catch (IOException e) {
+            // Readers of a ReleaseIndex don't throw
+            throw new RuntimeException(e);
+        } finally {
+            timer.end();
+        }
+
+        return ReleaseIndex.fromList(releases);
+    }
+
+    /**
+     * Create a reader merging the app's change log with the change logs of the modules in a
+     * single pass.
+     */
+    private ReleaseReader<ReleaseItem> openModules(ReleaseReader<ReleaseItem> appChangeLog,
+            List<ChangeLogModule> modules, int newerThan, int maxVersionCode) {
+        List<ReleaseReader<ReleaseItem>> readers =
+                new ArrayList<ReleaseReader<ReleaseItem>>(modules.size() + 1);
+        readers.add(appChangeLog);
+        for (ChangeLogModule module : modules) {
+            readers.add(getModuleReleaseIndex(module).newReader(newerThan, maxVersionCode));
+        }
+
+        return new CombiningReleaseReader<ReleaseItem>(readers, getReleaseFactory());
+    }
+
+    /**
+     * Get the full merged change log of a module from the caches or read it.
+     */
+    private ReleaseIndex getModuleReleaseIndex(ChangeLogModule module) {
+        Resources resources = mContext.getResources();
+        List<Resources> localizedResources;
+        if (!module.hasLocalizedChangeLog()) {
+            localizedResources = Collections.emptyList();
+        } else if (isLocaleChainEnabled()) {
+            localizedResources = getLocalizedResources();
+        } else {
+            localizedResources = Collections.singletonList(resources);
+        }
+
+        StringBuilder sb = new StringBuilder(
+                ChangeLogCache.getSourceKey(resources, module.getMasterResId()));
+        for (Resources localized : localizedResources) {
+            sb.append('\n').append(ChangeLogCache.getSourceKey(localized,
+                    module.getLocalizedResId()));
+        }
+        String sourceKey = sb.toString();
+
+        boolean useCache = isSharedCacheEnabled();
+        String cacheKey = getSharedCacheVariant() + '\n' + sourceKey;
+        if (useCache) {
+            ReleaseIndex releaseIndex =
+                    ChangeLogCache.getMerged(cacheKey, ReleaseReader.ALL_VERSIONS);
+            ChangeLogMetrics.cacheLookup(Cache.SHARED, releaseIndex != null);
+            if (releaseIndex != null) {
+                return releaseIndex;
+            }
+        }
+
+        File file = ChangeLogSnapshot.getFile(mContext, HtmlCache.createKey("module", sourceKey));
+        ChangeLogSnapshot snapshot = ChangeLogSnapshot.read(file, getReleaseFactory());
+
+        ReleaseIndex releaseIndex = null;
+        if (snapshot != null && snapshot.isCreatedFor(mCurrentVersionCode, mLastUpdateTime)) {
+            ChangeLogMetrics.cacheLookup(Cache.MODULE, true);
+            releaseIndex = snapshot.getReleases();
+        } else {
+            Long fingerprint = null;
+            try {
+                fingerprint = ChangeLogSnapshot.computeFingerprint(resources,
+                        module.getMasterResId(), localizedResources, module.getLocalizedResId());
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Error computing change log fingerprint", e);
+            }
+
+            if (snapshot != null && fingerprint != null &&
+                    snapshot.getFingerprint() == fingerprint) {
+                releaseIndex = snapshot.getReleases();
+            }
+            ChangeLogMetrics.cacheLookup(Cache.MODULE, releaseIndex != null);
+
+            if (releaseIndex == null) {
+                releaseIndex = readModuleReleaseIndex(module, localizedResources);
+            }
+
+            if (fingerprint != null) {
+                // Also rewritten if only the app version changed, so the next lookup is cheaper
+                new ChangeLogSnapshot(mCurrentVersionCode, mLastUpdateTime, fingerprint, null,
+                        releaseIndex).write(file);
+            }
+        }
+
+        if (useCache) {
+            ChangeLogCache.putMerged(mContext, cacheKey, ReleaseReader.ALL_VERSIONS,
+                    releaseIndex);
+        }
+
+        return releaseIndex;
+    }
+
+    /**
+     * Read the master change log and the localized change logs of a module and merge them.
+     */
+    private ReleaseIndex readModuleReleaseIndex(ChangeLogModule module,
+            List<Resources> localizedResources) {
+        SparseArray<ReleaseItem> masterChangelog;
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.READ_MASTER);
+        try {
+            masterChangelog =
+                    readModuleChangeLog(mContext.getResources(), module.getMasterResId());
+        } finally {
+            timer.end();
+        }
+        reportChangeLogRead(Phase.READ_MASTER, masterChangelog);
+
+        int count = localizedResources.size();
+        ReleaseIndex[] localizedChangelogs = new ReleaseIndex[count];
+        for (int i = 0; i < count; i++) {
+            SparseArray<ReleaseItem> changelog;
+            timer = ChangeLogMetrics.begin(Phase.READ_LOCALIZED);
+            try {
+                changelog = readModuleChangeLog(localizedResources.get(i),
+                        module.getLocalizedResId());
+            } finally {
+                timer.end();
+            }
+            reportChangeLogRead(Phase.READ_LOCALIZED, changelog);
+
+            localizedChangelogs[i] = ReleaseIndex.fromSparseArray(changelog);
+        }
+
+        timer = ChangeLogMetrics.begin(Phase.MERGE);
+        try {
+            return ReleaseIndex.merge(ReleaseIndex.fromSparseArray(masterChangelog),
+                    localizedChangelogs);
+        } finally {
+            timer.end();
+        }
+    }
+
+    private SparseArray<ReleaseItem> readModuleChangeLog(Resources resources, int resId) {
+        try {
+            return readChangeLogFromResource(resources, resId, true);
+        } catch (Resources.NotFoundException e) {
+            Log.w(LOG_TAG, "Change log of module not found", e);
+            return new SparseArray<ReleaseItem>();
+        }
+    }
+
+    /**
+     * Read and merge the master and the localized change log.
+     */
+    private ReleaseIndex readReleaseIndex(boolean full) {
+        if (isLocaleChainEnabled()) {
+            return readLocaleChainReleaseIndex(full);
+        }
+
+        SparseArray<ReleaseItem> masterChangelog;
+        SparseArray<ReleaseItem> changelog;
+        if (isParallelParsingEnabled()) {
+            FutureTask<SparseArray<ReleaseItem>> localizedTask = startLocalizedChangeLogTask(full);
+            masterChangelog = readMasterChangeLog(full);
+            changelog = getLocalizedChangeLogResult(localizedTask, full);
+        } else {
+            masterChangelog = readMasterChangeLog(full);
+            changelog = readLocalizedChangeLog(full);
+        }
+
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.MERGE);
+        try {
+            // Use release information from localized change log and fall back to the master file
+            // if necessary.
+            return ReleaseIndex.merge(
+                    ReleaseIndex.fromSparseArray(masterChangelog),
+                    ReleaseIndex.fromSparseArray(changelog));
+        } finally {
+            timer.end();
+        }
+    }
+
+    /**
+     * Read the master change log and the localized change logs of all locales in the locale chain
+     * and merge them.
+     *
+     * <p>
+     * The merged change log is stored in the {@link ChangeLogCache} if
+     * {@link #isSharedCacheEnabled()} returns {@code true}.
+     * </p>
+     */
+    private ReleaseIndex readLocaleChainReleaseIndex(boolean full) {
+        List<Resources> localizedResources = getLocalizedResources();
+        int newerThan = getNewerThan(full);
+
+        String cacheKey = null;
+        if (isSharedCacheEnabled()) {
+            StringBuilder sb = new StringBuilder(getSharedCacheVariant());
+            sb.append('\n').append(
+                    ChangeLogCache.getSourceKey(mContext.getResources(), R.xml.changelog_master));
+            for (Resources resources : localizedResources) {
+                sb.append('\n').append(ChangeLogCache.getSourceKey(resources, R.xml.changelog));
+            }
+            cacheKey = sb.toString();
+
+            ReleaseIndex releaseIndex = ChangeLogCache.getMerged(cacheKey, newerThan);
+            ChangeLogMetrics.cacheLookup(Cache.SHARED, releaseIndex != null);
+            if (releaseIndex != null) {
+                return releaseIndex;
+            }
+        }
+
+        SparseArray<ReleaseItem> masterChangelog = readMasterChangeLog(full);
+
+        int count = localizedResources.size();
+        ReleaseIndex[] localizedChangelogs = new ReleaseIndex[count];
+        for (int i = 0; i < count; i++) {
+            SparseArray<ReleaseItem> changelog;
+            PhaseTimer timer = ChangeLogMetrics.begin(Phase.READ_LOCALIZED);
+            try {
+                changelog = readCachedChangeLog(localizedResources.get(i),
+                        R.raw.changelog_index, R.xml.changelog, full);
+            } finally {
+                timer.end();
+            }
+            reportChangeLogRead(Phase.READ_LOCALIZED, changelog);
+
+            localizedChangelogs[i] = ReleaseIndex.fromSparseArray(changelog);
+        }
+
+        ReleaseIndex releaseIndex;
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.MERGE);
+        try {
+            releaseIndex = ReleaseIndex.merge(
+                    ReleaseIndex.fromSparseArray(masterChangelog), localizedChangelogs);
+        } finally {
+            timer.end();
+        }
+
+        if (cacheKey != null) {
+            ChangeLogCache.putMerged(mContext, cacheKey, newerThan, releaseIndex);
+        }
+
+        return releaseIndex;
+    }
+
+    /**
+     * Whether the localized change logs of multiple locales are used.
+     *
+     * <p>
+     * The default implementation returns {@code false}, i.e. only the {@code changelog.xml} file
+     * matching the current configuration is used. Subclasses can return {@code true} to fall back
+     * through the locales returned by {@link #getLocaleChain()} for each release, before falling
+     * back to the master change log. E.g. a release missing from {@code xml-pt-rBR/changelog.xml}
+     * can then be taken from {@code xml-pt/changelog.xml}.
+     * </p>
+     *
+     * <p>
+     * Each localized change log is parsed once and stored in the {@link ChangeLogCache}, as is the
+     * merged result. So switching between locales doesn't parse change logs that were already
+     * read.
+     * </p>
+     *
+     * <p>
+     * Resources of locales other than the one of the current configuration can only be accessed
+     * on Android 4.2 (API 17) and newer. On older versions those locales are skipped. Subclasses
+     * that override {@link #getLocalizedChangeLog(boolean)} or
+     * {@link #openLocalizedChangeLog(int, int)} shouldn't enable this, because the locale chain
+     * doesn't use those methods.
+     * </p>
+     */
+    protected boolean isLocaleChainEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns the locales whose localized change logs are used, in order of preference.
+     *
+     * <p>
+     * The default implementation returns the locale of the current configuration, followed by the
+     * same locale without variant and the language alone, e.g. {@code pt_BR} and {@code pt}.
+     * Subclasses can override this to add further fallbacks, e.g. {@link Locale#ENGLISH}.
+     * </p>
+     *
+     * @see #isLocaleChainEnabled()
+     */
+    protected List<Locale> getLocaleChain() {
+        List<Locale> chain = new ArrayList<Locale>(3);
+        Locale locale = mContext.getResources().getConfiguration().locale;
+        if (locale != null) {
+            addLocale(chain, locale);
+            addLocale(chain, new Locale(locale.getLanguage(), locale.getCountry()));
+            addLocale(chain, new Locale(locale.getLanguage()));
+        }
+
+        return chain;
+    }
+
+    private static void addLocale(List<Locale> locales, Locale locale) {
+        if (!locales.contains(locale)) {
+            locales.add(locale);
+        }
+    }
+
+    /**
+     * Returns the {@code Resources} used to read localized change logs, in order of preference.
+     *
+     * <p>
+     * Locales whose {@code changelog.xml} resolves to the same file as a previous locale are
+     * skipped.
+     * </p>
+     */
+    private List<Resources> getLocalizedResources() {
+        Resources resources = mContext.getResources();
+        if (!isLocaleChainEnabled()) {
+            return Collections.singletonList(resources);
+        }
+
+        synchronized (this) {
+            if (mLocalizedResources != null) {
+                return mLocalizedResources;
+            }
+        }
+
+        Locale currentLocale = resources.getConfiguration().locale;
+        List<Resources> result = new ArrayList<Resources>();
+        List<String> sourceKeys = new ArrayList<String>();
+        for (Locale locale : getLocaleChain()) {
+            Resources localizedResources;
+            if (locale.equals(currentLocale)) {
+                localizedResources = resources;
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                localizedResources = createResources(locale);
+            } else {
+                continue;
+            }
+
+            String sourceKey = ChangeLogCache.getSourceKey(localizedResources, R.xml.changelog);
+            if (!sourceKeys.contains(sourceKey)) {
+                sourceKeys.add(sourceKey);
+                result.add(localizedResources);
+            }
+        }
+
+        synchronized (this) {
+            mLocalizedResources = result;
+        }
+
+        return result;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private Resources createResources(Locale locale) {
+        Configuration configuration = new Configuration(mContext.getResources().getConfiguration());
+        configuration.setLocale(locale);
+        return mContext.createConfigurationContext(configuration).getResources();
+    }
+
+    /**
+     * Whether the merged full change log is persisted and updated incrementally.
+     *
+     * <p>
+     * The default implementation returns {@code false}. Subclasses can return {@code true} to
+     * avoid parsing the whole change log history after each app update. Then the merged change log
+     * is stored in the app's cache directory together with a fingerprint of the change log
+     * resources and a fingerprint of the releases it contains. When the resources changed, the
+     * fingerprint of those releases is computed again. If it's unchanged, only releases newer than
+     * the latest release in the snapshot are read and added to it. If any of the releases in the
+     * snapshot changed, e.g. because a translation was added, the snapshot is rebuilt from
+     * scratch.
+     * </p>
+     *
+     * <p>
+     * Computing the fingerprint of some releases requires the change log to be compiled by
+     * {@code changelog-index.gradle}. Without it the snapshot is rebuilt from scratch whenever the
+     * resources changed. Subclasses that read the change log from somewhere other than the default
+     * resources shouldn't enable this.
+     * </p>
+     */
+    protected boolean isSnapshotEnabled() {
+        return false;
+    }
+
+    /**
+     * Get the change log from the persisted snapshot, updating the snapshot if necessary.
+     *
+     * @param newerThan
+     *         Only releases with a version code higher than this are needed.
+     *         {@link ReleaseReader#ALL_VERSIONS} requests the full change log. If the snapshot
+     *         has to be updated, the full change log is returned.
+     */
+    private ReleaseIndex getSnapshotReleaseIndex(int newerThan) {
+        File file = ChangeLogSnapshot.getFile(mContext, HtmlCache.createKey(
+                getClass().getName(), mContext.getResources().getConfiguration().locale,
+                isLocaleChainEnabled() ? getLocaleChain() : null));
+
+        Release.Factory<ReleaseItem> factory = getReleaseFactory();
+        ChangeLogSnapshot snapshot = ChangeLogSnapshot.read(file, factory, newerThan);
+        if (snapshot != null && snapshot.isCreatedFor(mCurrentVersionCode, mLastUpdateTime)) {
+            ChangeLogMetrics.cacheLookup(Cache.SNAPSHOT, true);
+            return snapshot.getReleases();
+        }
+
+        if (snapshot != null && newerThan != ReleaseReader.ALL_VERSIONS) {
+            // Updating the snapshot requires all of its releases
+            snapshot = ChangeLogSnapshot.read(file, factory);
+        }
+
+        long fingerprint;
+        try {
+            fingerprint = ChangeLogSnapshot.computeFingerprint(mContext.getResources(),
+                    R.xml.changelog_master, getLocalizedResources(), R.xml.changelog);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error computing change log fingerprint", e);
+            ChangeLogMetrics.cacheLookup(Cache.SNAPSHOT, false);
+            return readReleaseIndex(true);
+        }
+
+        ReleaseIndex releaseIndex = null;
+        Long baseFingerprint = null;
+        if (snapshot != null) {
+            if (snapshot.getFingerprint() == fingerprint) {
+                releaseIndex = snapshot.getReleases();
+                baseFingerprint = snapshot.getBaseFingerprint();
+            } else {
+                releaseIndex = updateSnapshot(snapshot);
+            }
+        }
+
+        ChangeLogMetrics.cacheLookup(Cache.SNAPSHOT, releaseIndex != null);
+        if (releaseIndex == null) {
+            releaseIndex = readReleaseIndex(true);
+        }
+
+        if (baseFingerprint == null && releaseIndex.size() > 0) {
+            baseFingerprint = computeBaseFingerprint(releaseIndex.getVersionCode(0));
+        }
+
+        new ChangeLogSnapshot(mCurrentVersionCode, mLastUpdateTime, fingerprint, baseFingerprint,
+                releaseIndex).write(file);
+
+        return releaseIndex;
+    }
+
+    /**
+     * Add the releases of the app's change log newer than the latest release in {@code snapshot}.
+     *
+     * @return The updated change log or {@code null} if the snapshot can't be updated
+     *         incrementally, i.e. if the releases it contains have changed or their fingerprint
+     *         can't be computed.
+     */
+    private ReleaseIndex updateSnapshot(ChangeLogSnapshot snapshot) {
+        ReleaseIndex snapshotReleases = snapshot.getReleases();
+        Long snapshotBaseFingerprint = snapshot.getBaseFingerprint();
+        if (snapshotReleases.size() == 0 || snapshotBaseFingerprint == null) {
+            return null;
+        }
+
+        // Releases that were modified, added or removed change the fingerprint
+        int latestVersionCode = snapshotReleases.getVersionCode(0);
+        Long baseFingerprint = computeBaseFingerprint(latestVersionCode);
+        if (!snapshotBaseFingerprint.equals(baseFingerprint)) {
+            return null;
+        }
+
+        Release.Factory<ReleaseItem> factory = getReleaseFactory();
+        List<ReleaseItem> releases = new ArrayList<ReleaseItem>();
+        // The snapshot only contains the app's own change log. Modules are added when loading it.
+        ReleaseReader<ReleaseItem> reader = openAppChangeLog(latestVersionCode, Integer.MAX_VALUE);
+        try {
+            int previousVersionCode = Integer.MAX_VALUE;
+            ReleaseItem release;
+            while ((release = reader.next()) != null) {
+                if (release.versionCode >= previousVersionCode) {
+                    // Releases are out of order
+                    return null;
+                }
+                previousVersionCode = release.versionCode;
+
+                releases.add(factory.createRelease(release.versionCode, release.versionName,
+                        release.changes));
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        releases.addAll(snapshotReleases.asList());
+        return ReleaseIndex.fromList(releases);
+    }
+
+    /**
+     * Compute the fingerprint of the releases of the app's change log up to a version code.
+     *
+     * @return The fingerprint or {@code null} if the change log isn't compiled or couldn't be
+     *         read.
+     */
+    private Long computeBaseFingerprint(int maxVersionCode) {
+        try {
+            return ChangeLogSnapshot.computeBaseFingerprint(mContext.getResources(),
+                    R.raw.changelog_master_index, getLocalizedResources(), R.raw.changelog_index,
+                    maxVersionCode);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error computing change log fingerprint", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the search index of the full change log.
+     *
+     * <p>
+     * The index is stored in the app's cache directory. After an app update only the releases
+     * that were added to the change log are tokenized. This performs I/O and should not be called
+     * on the main thread.
+     * </p>
+     *
+     * @see #search(String)
+     */
+    public SearchIndex getSearchIndex() {
+        return getSearchIndex(null);
+    }
+
+    /**
+     * Returns the releases of the full change log containing changes that match a query.
+     *
+     * <p>
+     * Only the matching changes are included. A change matches if every word of the query is a
+     * word, or the beginning of a word, of the change. Case and HTML markup are ignored. This
+     * performs I/O and should not be called on the main thread.
+     * </p>
+     *
+     * @return A sorted {@code List} containing the matching releases. The list is empty if there
+     *         are no matching changes or the query doesn't contain any words.
+     *
+     * @see #getChangeLogComparator()
+     */
+    public List<ReleaseItem> search(String query) {
+        ReleaseIndex releaseIndex = getReleaseIndex(true);
+        List<SearchIndex.Match> matches = getSearchIndex(releaseIndex).search(query);
+
+        List<ReleaseItem> releases =
+                ChangeLogFilter.filterReleases(releaseIndex.asList(), matches);
+        sortChangeLog(releases);
+
+        return releases;
+    }
+
+    /**
+     * Get the persisted search index, updating it if necessary.
+     *
+     * @param releaseIndex
+     *         The full change log or {@code null} if it hasn't been read yet.
+     */
+    private SearchIndex getSearchIndex(ReleaseIndex releaseIndex) {
+        File file = SearchIndexFile.getFile(mContext, HtmlCache.createKey(
+                getClass().getName(), mContext.getResources().getConfiguration().locale,
+                isLocaleChainEnabled() ? getLocaleChain() : null));
+
+        SearchIndexFile persisted = SearchIndexFile.read(file);
+        boolean hit = persisted != null &&
+                persisted.isCreatedFor(mCurrentVersionCode, mLastUpdateTime);
+        ChangeLogMetrics.cacheLookup(Cache.SEARCH_INDEX, hit);
+        if (hit) {
+            return persisted.getSearchIndex();
+        }
+
+        if (releaseIndex == null) {
+            releaseIndex = getReleaseIndex(true);
+        }
+
+        List<ReleaseItem> releases = releaseIndex.asList();
+        SearchIndex searchIndex = (persisted == null) ?
+                SearchIndex.build(releases) : persisted.getSearchIndex().update(releases);
+
+        new SearchIndexFile(mCurrentVersionCode, mLastUpdateTime, searchIndex).write(file);
+
+        return searchIndex;
+    }
+
+    /**
+     * Sort releases using {@link #getChangeLogComparator()}.
+     *
+     * <p>
+     * Releases are read latest version first. So there's nothing to do when the default sort order
+     * is used.
+     * </p>
+     */
+    private void sortChangeLog(List<ReleaseItem> releases) {
+        Comparator<ReleaseItem> comparator = getChangeLogComparator();
+        if (comparator != LATEST_VERSION_FIRST) {
+            Collections.sort(releases, comparator);
+        }
+    }
+
+    /**
+     * Call {@link #getMasterChangeLog(boolean)} and report metrics.
+     */
+    private SparseArray<ReleaseItem> readMasterChangeLog(boolean full) {
+        SparseArray<ReleaseItem> changelog;
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.READ_MASTER);
+        try {
+            changelog = getMasterChangeLog(full);
+        } finally {
+            timer.end();
+        }
+        reportChangeLogRead(Phase.READ_MASTER, changelog);
+
+        return changelog;
+    }
+
+    /**
+     * Call {@link #getLocalizedChangeLog(boolean)} and report metrics.
+     */
+    private SparseArray<ReleaseItem> readLocalizedChangeLog(boolean full) {
+        SparseArray<ReleaseItem> changelog;
+        PhaseTimer timer = ChangeLogMetrics.begin(Phase.READ_LOCALIZED);
+        try {
+            changelog = getLocalizedChangeLog(full);
+        } finally {
+            timer.end();
+        }
+        reportChangeLogRead(Phase.READ_LOCALIZED, changelog);
+
+        return changelog;
+    }
+
+    private static void reportChangeLogRead(Phase phase, SparseArray<ReleaseItem> changelog) {
+        if (!ChangeLogMetrics.isEnabled()) {
+            return;
+        }
+
+        int releaseCount = changelog.size();
+        int changeCount = 0;
+        for (int i = 0; i < releaseCount; i++) {
+            changeCount += changelog.valueAt(i).changes.size();
+        }
+
+        ChangeLogMetrics.changeLogRead(phase, releaseCount, changeCount);
+    }
+
+    /**
+     * Whether {@link #getChangeLog(boolean)} reads the master and the localized change log at the
+     * same time.
+     *
+     * <p>
+     * The default implementation returns {@code false}. Subclasses can return {@code true} to
+     * reduce the time it takes to read large change logs on multi-core devices. In that case
+     * {@link #getLocalizedChangeLog(boolean)} is called on a thread of the
+     * {@link #getParsingExecutor() parsing executor}.
+     * </p>
+     */
+    protected boolean isParallelParsingEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns the {@code Executor} used to read the localized change log if
+     * {@link #isParallelParsingEnabled()} returns {@code true}.
+     *
+     * <p>
+     * The default implementation returns an executor with a single background thread that is
+     * shared by all {@code ChangeLog} instances. The master change log is always read on the
+     * calling thread. If the executor hasn't started reading the localized change log by the time
+     * the master change log has been read, the calling thread reads it, too.
+     * </p>
+     */
+    protected Executor getParsingExecutor() {
+        synchronized (ChangeLog.class) {
+            if (sParsingExecutor == null) {
+                sParsingExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ckChangeLog-Parser");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+
+            return sParsingExecutor;
+        }
+    }
+
+    private FutureTask<SparseArray<ReleaseItem>> startLocalizedChangeLogTask(final boolean full) {
+        FutureTask<SparseArray<ReleaseItem>> task = new FutureTask<SparseArray<ReleaseItem>>(
+                new Callable<SparseArray<ReleaseItem>>() {
+                    @Override
+                    public SparseArray<ReleaseItem> call() {
+                        return readLocalizedChangeLog(full);
+                    }
+                });
+
+        try {
+            getParsingExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            // The task will be run by getLocalizedChangeLogResult()
+        }
+
+        return task;
+    }
+
+    private SparseArray<ReleaseItem> getLocalizedChangeLogResult(
+            FutureTask<SparseArray<ReleaseItem>> task, boolean full) {
+        // Run the task on this thread if the executor hasn't started it yet. This does nothing if
+        // the task is already running or done.
+        task.run();
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return readLocalizedChangeLog(full);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Returns the latest releases of the merged change log.
+     *
+     * @param limit
+     *         The maximum number of releases to return.
+     *
+     * @see #getChangeLog(int, int, int)
+     */
+    public List<ReleaseItem> getLatestReleases(int limit) {
+        return getChangeLog(Integer.MIN_VALUE, Integer.MAX_VALUE, limit);
+    }
+
+    /**
+     * Returns the releases of the merged change log with a version code in the given range.
+     *
+     * <p>
+     * Reading the change log files stops as soon as the requested releases have been found. So
+     * asking for a few recent releases doesn't require reading the whole history.
+     * </p>
+     *
+     * @param minVersionCode
+     *         The lowest version code to include.
+     * @param maxVersionCode
+     *         The highest version code to include.
+     * @param limit
+     *         The maximum number of releases to return. Starting with the latest version.
+     *
+     * @return A sorted {@code List} containing the matching {@link ReleaseItem}s.
+     *
+     * @see #getChangeLogComparator()
+     */
+    public List<ReleaseItem> getChangeLog(int minVersionCode, int maxVersionCode, int limit) {
+        List<ReleaseItem> result = new ArrayList<ReleaseItem>();
+        if (minVersionCode > maxVersionCode || limit <= 0) {
+            return result;
+        }
+
+        int newerThan = (minVersionCode == Integer.MIN_VALUE) ?
+                ReleaseReader.ALL_VERSIONS : minVersionCode - 1;
+
+        ReleaseReader<ReleaseItem> reader = openChangeLog(newerThan, maxVersionCode);
+        try {
+            ReleaseItem release;
+            while (result.size() < limit && (release = reader.next()) != null) {
+                result.add(release);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        sortChangeLog(result);
+
+        return result;
+    }
+
+    /**
+     * Open the merged change log for reading one release at a time.
+     */
+    private ReleaseReader<ReleaseItem> openChangeLog(int newerThan, int maxVersionCode) {
+        ReleaseReader<ReleaseItem> reader = openAppChangeLog(newerThan, maxVersionCode);
+
+        List<ChangeLogModule> modules = getModules();
+        return modules.isEmpty() ?
+                reader : openModules(reader, modules, newerThan, maxVersionCode);
+    }
+
+    /**
+     * Open the master change log and the localized change logs of the app and merge them while
+     * reading.
+     */
+    private ReleaseReader<ReleaseItem> openAppChangeLog(int newerThan, int maxVersionCode) {
+        ReleaseReader<ReleaseItem> master = openMasterChangeLog(newerThan, maxVersionCode);
+        if (!isLocaleChainEnabled()) {
+            return new MergingReleaseReader<ReleaseItem>(master,
+                    openLocalizedChangeLog(newerThan, maxVersionCode));
+        }
+
+        List<ReleaseReader<ReleaseItem>> localized = new ArrayList<ReleaseReader<ReleaseItem>>();
+        for (Resources resources : getLocalizedResources()) {
+            localized.add(openChangeLogResource(resources, R.raw.changelog_index, R.xml.changelog,
+                    newerThan, maxVersionCode));
+        }
+
+        return new MergingReleaseReader<ReleaseItem>(master, localized);
+    }
+
+    private int getNewerThan(boolean full) {
+        return full ? ReleaseReader.ALL_VERSIONS : mLastVersionCode;
+    }
+
+    /**
+     * Read master change log from {@code xml/changelog_master.xml}
+     *
+     * <p>
+     * If the app was built with {@code changelog-index.gradle} the precompiled version in
+     * {@code raw/changelog_master_index.bin} is used instead.
+     * </p>
+     *
+     * @see #readChangeLogFromCompiledResource(int, boolean)
+     * @see #readChangeLogFromResource(int, boolean)
+     */
+    protected SparseArray<ReleaseItem> getMasterChangeLog(boolean full) {
+        return readCachedChangeLog(mContext.getResources(), R.raw.changelog_master_index,
+                R.xml.changelog_master, full);
+    }
+
+    /**
+     * Read localized change log from {@code xml[-lang]/changelog.xml}
+     *
+     * <p>
+     * If the app was built with {@code changelog-index.gradle} the precompiled version in
+     * {@code raw[-lang]/changelog_index.bin} is used instead.
+     * </p>
+     *
+     * @see #readChangeLogFromCompiledResource(int, boolean)
+     * @see #readChangeLogFromResource(int, boolean)
+     */
+    protected SparseArray<ReleaseItem> getLocalizedChangeLog(boolean full) {
+        return readCachedChangeLog(mContext.getResources(), R.raw.changelog_index,
+                R.xml.changelog, full);
+    }
+
+    /**
+     * Open master change log for reading one release at a time.
+     *
+     * <p>
+     * Subclasses that override {@link #getMasterChangeLog(boolean)} should override this method,
+     * too.
+     * </p>
+     *
+     * @param newerThan
+     *         Only releases with a version code higher than this need to be returned.
+     *         {@link ReleaseReader#ALL_VERSIONS} requests all releases.
+     * @param maxVersionCode
+     *         Only releases with a version code lower than or equal to this need to be returned.
+     *
+     * @see #writeLog(Appendable, boolean)
+     * @see #getChangeLog(int, int, int)
+     */
+    protected ReleaseReader<ReleaseItem> openMasterChangeLog(int newerThan, int maxVersionCode) {
+        return openChangeLogResource(mContext.getResources(), R.raw.changelog_master_index,
+                R.xml.changelog_master, newerThan, maxVersionCode);
+    }
+
+    /**
+     * Open localized change log for reading one release at a time.
+     *
+     * <p>
+     * Subclasses that override {@link #getLocalizedChangeLog(boolean)} should override this
+     * method, too.
+     * </p>
+     *
+     * @param newerThan
+     *         Only releases with a version code higher than this need to be returned.
+     *         {@link ReleaseReader#ALL_VERSIONS} requests all releases.
+     * @param maxVersionCode
+     *         Only releases with a version code lower than or equal to this need to be returned.
+     *
+     * @see #writeLog(Appendable, boolean)
+     * @see #getChangeLog(int, int, int)
+     */
+    protected ReleaseReader<ReleaseItem> openLocalizedChangeLog(int newerThan, int maxVersionCode) {
+        return openChangeLogResource(mContext.getResources(), R.raw.changelog_index,
+                R.xml.changelog, newerThan, maxVersionCode);
+    }
+
+    /**
+     * Open a change log for reading from the process-wide cache, the compiled resource or the XML
+     * resource (in that order).
+     *
+     * <p>
+     * Unlike {@link #readCachedChangeLog(Resources, int, int, boolean)} this doesn't add the change
+     * log to the cache, because that would mean keeping all releases in memory.
+     * </p>
+     */
+    private ReleaseReader<ReleaseItem> openChangeLogResource(Resources resources,
+            int compiledResId, int xmlResId, int newerThan, int maxVersionCode) {
+        if (isSharedCacheEnabled()) {
+            SparseArray<ReleaseItem> changelog = ChangeLogCache.get(getSharedCacheVariant(),
+                    resources, xmlResId, newerThan);
+            ChangeLogMetrics.cacheLookup(Cache.SHARED, changelog != null);
+            if (changelog != null) {
+                return new SparseArrayReleaseReader(changelog, maxVersionCode);
+            }
+        }
+
+        InputStream in = resources.openRawResource(compiledResId);
+        try {
+            CompiledChangeLog compiledChangeLog = CompiledChangeLog.read(in);
+            if (compiledChangeLog != null) {
+                return compiledChangeLog.newReader(ReleaseItem.FACTORY, newerThan,
+                        maxVersionCode);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading compiled change log", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        final XmlResourceParser xml = resources.getXml(xmlResId);
+        return new XmlReleaseReader<ReleaseItem>(xml, ReleaseItem.FACTORY, newerThan,
+                maxVersionCode) {
+            @Override
+            public void close() {
+                xml.close();
+            }
+        };
+    }
+
+    /**
+     * Whether parsed change log resources may be stored in and read from the process-wide
+     * {@link ChangeLogCache}.
+     *
+     * <p>
+     * The default implementation returns {@code true}, so the change log isn't read again when a
+     * new {@code ChangeLog} instance is created, e.g. when an activity is recreated or a dialog
+     * is opened again. Entries are shared with instances of other classes that parse the change
+     * log the same way, i.e. that inherit {@link #readChangeLog(XmlPullParser, boolean)},
+     * {@link #getMasterChangeLog(boolean)} and {@link #getLocalizedChangeLog(boolean)} from the
+     * same class, and that use the same storage mode (see {@link #isLazyLoadingEnabled()} and
+     * {@link #isCompactStorageEnabled()}). Subclasses can return {@code false} to always read the
+     * change log resources.
+     * </p>
+     */
+    protected boolean isSharedCacheEnabled() {
+        return true;
+    }
+
+    /**
+     * Get the variant identifying the releases this instance stores in the {@link ChangeLogCache}.
+     *
+     * <p>
+     * Subclasses that override the parsing methods may return different releases, so the class
+     * declaring those methods is part of the variant. Subclasses that only change how the change
+     * log is displayed share entries with their superclass. Lazily decoded releases keep the
+     * compiled change log in memory and compact releases are backed by a {@link StringArena}, so
+     * they must not be handed to instances that disabled those modes.
+     * </p>
+     */
+    private String getSharedCacheVariant() {
+        return getParsingClass(getClass()).getName() + ':' + isLazyLoadingEnabled() + ':' +
+                isCompactStorageEnabled();
+    }
+
+    /**
+     * Get the most derived class in the hierarchy of {@code changeLogClass} that declares
+     * {@link #readChangeLog(XmlPullParser, boolean)}, {@link #getMasterChangeLog(boolean)} or
+     * {@link #getLocalizedChangeLog(boolean)}.
+     */
+    private static Class<?> getParsingClass(Class<?> changeLogClass) {
+        synchronized (sParsingClasses) {
+            Class<?> parsingClass = sParsingClasses.get(changeLogClass);
+            if (parsingClass != null) {
+                return parsingClass;
+            }
+        }
+
+        Class<?> parsingClass = changeLogClass;
+        while (parsingClass != ChangeLog.class && !declaresParsingMethod(parsingClass)) {
+            parsingClass = parsingClass.getSuperclass();
+        }
+
+        synchronized (sParsingClasses) {
+            sParsingClasses.put(changeLogClass, parsingClass);
         }
 
-        ReleaseItem release = new ReleaseItem(versionCode, version, changes);
-        changelog.put(versionCode, release);
+        return parsingClass;
+    }
+
+    private static boolean declaresParsingMethod(Class<?> clazz) {
+        return declaresMethod(clazz, "readChangeLog", XmlPullParser.class, boolean.class) ||
+                declaresMethod(clazz, "getMasterChangeLog", boolean.class) ||
+                declaresMethod(clazz, "getLocalizedChangeLog", boolean.class);
+    }
+
+    private static boolean declaresMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            clazz.getDeclaredMethod(name, parameterTypes);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
 
+    /**
+     * Whether the changes of a release are only decoded when they are first accessed.
+     *
+     * <p>
+     * The default implementation returns {@code false}. Subclasses can return {@code true} to
+     * reduce the memory used to display a large change log with {@link #isListViewEnabled()}.
+     * Then only the changes of the releases scrolled into view are decoded. The changes of the
+     * most recently accessed releases are cached, all others are decoded again when necessary.
+     * </p>
+     *
+     * <p>
+     * This only applies to change logs compiled by {@code changelog-index.gradle}. XML resources
+     * are always read completely.
+     * </p>
+     */
+    protected boolean isLazyLoadingEnabled() {
         return false;
     }
 
     /**
-     * Returns a {@link Comparator} that specifies the sort order of the {@link ReleaseItem}s.
+     * Whether the changes of releases read by {@link #getChangeLog(boolean)} are stored in a
+     * compact form.
      *
      * <p>
-     * The default implementation returns the items in reverse order (latest version first).
+     * The default implementation returns {@code false}. Subclasses can return {@code true} to
+     * reduce the memory used by large change logs. Then the change texts of all releases are
+     * stored in a single buffer and identical texts in the master and the localized change log are
+     * only stored once. {@link ReleaseItem#changes} is a read-only list in that case. Accessing a
+     * change creates a new {@code String} instance.
+     * </p>
+     *
+     * <p>
+     * Releases whose changes are decoded on demand (see {@link #isLazyLoadingEnabled()}) are not
+     * affected.
      * </p>
      */
-    protected Comparator<ReleaseItem> getChangeLogComparator() {
-        return new Comparator<ReleaseItem>() {
+    protected boolean isCompactStorageEnabled() {
+        return false;
+    }
+
+    /**
+     * Returns the factory used to create the {@link ReleaseItem}s returned by
+     * {@link #getChangeLog(boolean)}.
+     */
+    private Release.Factory<ReleaseItem> getReleaseFactory() {
+        if (!isCompactStorageEnabled()) {
+            return ReleaseItem.FACTORY;
+        }
+
+        final StringArena arena;
+        synchronized (this) {
+            if (mStringArena == null) {
+                mStringArena = new StringArena();
+            }
+            arena = mStringArena;
+        }
+
+        return new Release.Factory<ReleaseItem>() {
             @Override
-            public int compare(ReleaseItem lhs, ReleaseItem rhs) {
-                if (lhs.versionCode < rhs.versionCode) {
-                    return 1;
-                } else if (lhs.versionCode > rhs.versionCode) {
-                    return -1;
-                } else {
-                    return 0;
-                }
+            public ReleaseItem createRelease(int versionCode, String versionName,
+                    List<String> changes) {
+                return new ReleaseItem(versionCode, versionName, arena.copyOf(changes));
             }
         };
     }
 
     /**
-     * Container used to store information about a release/version.
+     * Read a change log from the process-wide cache, the compiled resource or the XML resource
+     * (in that order).
      */
-    public static class ReleaseItem {
-        /**
-         * Version code of the release.
-         */
-        public final int versionCode;
+    private SparseArray<ReleaseItem> readCachedChangeLog(Resources resources, int compiledResId,
+            int xmlResId, boolean full) {
+        boolean useCache = isSharedCacheEnabled();
+        int newerThan = getNewerThan(full);
+
+        if (useCache) {
+            SparseArray<ReleaseItem> changelog = ChangeLogCache.get(getSharedCacheVariant(),
+                    resources, xmlResId, newerThan);
+            ChangeLogMetrics.cacheLookup(Cache.SHARED, changelog != null);
+            if (changelog != null) {
+                return changelog;
+            }
+        }
 
-        /**
-         * Version name of the release.
-         */
-        public final String versionName;
+        SparseArray<ReleaseItem> changelog =
+                readChangeLogFromCompiledResource(resources, compiledResId, full);
+        if (changelog == null) {
+            changelog = readChangeLogFromResource(resources, xmlResId, full);
+        }
+
+        if (useCache) {
+            ChangeLogCache.put(mContext, getSharedCacheVariant(), resources, xmlResId, newerThan,
+                    changelog);
+        }
+
+        return changelog;
+    }
+
+    /**
+     * Read change log from a raw resource file created by {@code changelog-index.gradle}.
+     *
+     * <p>
+     * Releases in a compiled change log are sorted by version code. So the changes since the last
+     * version can be found with a binary search instead of reading the whole file.
+     * </p>
+     *
+     * <p>
+     * If {@link #isLazyLoadingEnabled()} returns {@code true} the changes of the returned releases
+     * are decoded on demand.
+     * </p>
+     *
+     * @param resId
+     *         Resource ID of the compiled change log.
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     *
+     * @return A {@code SparseArray} containing {@link ReleaseItem}s representing the (partial)
+     *         change log. Or {@code null} if the resource file is empty (no compiled change log
+     *         available) or couldn't be read.
+     */
+    protected final SparseArray<ReleaseItem> readChangeLogFromCompiledResource(int resId,
+            boolean full) {
+        return readChangeLogFromCompiledResource(mContext.getResources(), resId, full);
+    }
+
+    private SparseArray<ReleaseItem> readChangeLogFromCompiledResource(Resources resources,
+            int resId, boolean full) {
+        InputStream in = resources.openRawResource(resId);
+        try {
+            CompiledChangeLog compiledChangeLog = CompiledChangeLog.read(in);
+            if (compiledChangeLog == null) {
+                return null;
+            }
+
+            int count = full ? compiledChangeLog.size() :
+                    compiledChangeLog.countNewerThan(mLastVersionCode);
+            boolean lazy = isLazyLoadingEnabled();
+            Release.Factory<ReleaseItem> factory = getReleaseFactory();
+
+            // Releases are sorted latest version first. Add them in reverse order so SparseArray
+            // can simply append them.
+            SparseArray<ReleaseItem> result = new SparseArray<ReleaseItem>(count);
+            for (int i = count - 1; i >= 0; i--) {
+                ReleaseItem release = lazy ?
+                        compiledChangeLog.getLazyRelease(i, ReleaseItem.FACTORY) :
+                        compiledChangeLog.getRelease(i, factory);
+                result.append(compiledChangeLog.getVersionCode(i), release);
+            }
 
+            return result;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading compiled change log", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Read change log from XML resource file.
+     *
+     * @param resId
+     *         Resource ID of the XML file to read the change log from.
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     *
+     * @return A {@code SparseArray} containing {@link ReleaseItem}s representing the (partial)
+     *         change log.
+     */
+    protected final SparseArray<ReleaseItem> readChangeLogFromResource(int resId, boolean full) {
+        return readChangeLogFromResource(mContext.getResources(), resId, full);
+    }
+
+    private SparseArray<ReleaseItem> readChangeLogFromResource(Resources resources, int resId,
+            boolean full) {
+        XmlResourceParser xml = resources.getXml(resId);
+        try {
+            return readChangeLog(xml, full);
+        } finally {
+            xml.close();
+        }
+    }
+
+    /**
+     * Read change log from a {@link ChangeLogSource}, e.g. an {@link AssetChangeLogSource} or
+     * {@link ChangeLogSource#fromFile(File)}.
+     *
+     * <p>
+     * The XML data is parsed by {@link #readChangeLog(XmlPullParser, boolean)} while it is read. So
+     * only the changes since the last version are read if {@code full} is {@code false}.
+     * Subclasses can use this in {@link #getMasterChangeLog(boolean)} and
+     * {@link #getLocalizedChangeLog(boolean)}.
+     * </p>
+     *
+     * @param source
+     *         The source to read the change log from.
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     *
+     * @return A {@code SparseArray} containing {@link ReleaseItem}s representing the (partial)
+     *         change log.
+     *
+     * @see #scanChangeLogFromSource(ChangeLogSource, boolean)
+     * @see #openChangeLogSource(ChangeLogSource, int, int)
+     */
+    protected final SparseArray<ReleaseItem> readChangeLogFromSource(ChangeLogSource source,
+            boolean full) {
+        ChangeLogSource.Input input;
+        try {
+            input = source.open();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error opening change log " + source, e);
+            return new SparseArray<ReleaseItem>();
+        }
+
+        try {
+            return readChangeLog(input.getParser(), full);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Read change log from a {@link ChangeLogSource} using a {@link ChangeLogScanner}.
+     *
+     * <p>
+     * Like {@link #readChangeLogFromSource(ChangeLogSource, boolean)}, but files encoded as UTF-8
+     * are read by a {@code ChangeLogScanner}, which is a lot faster than an
+     * {@code XmlPullParser}. Other files are read by an {@link XmlReleaseReader}. Both return the
+     * same releases as the default implementation of
+     * {@link #readChangeLog(XmlPullParser, boolean)}, which isn't called. So subclasses overriding
+     * that method should use {@code readChangeLogFromSource()} instead.
+     * </p>
+     *
+     * @param source
+     *         The source to read the change log from.
+     * @param full
+     *         If this is {@code true} the full change log is returned. Otherwise only changes for
+     *         versions newer than the last version are returned.
+     *
+     * @return A {@code SparseArray} containing {@link ReleaseItem}s representing the (partial)
+     *         change log.
+     */
+    protected final SparseArray<ReleaseItem> scanChangeLogFromSource(ChangeLogSource source,
+            boolean full) {
+        SparseArray<ReleaseItem> result = new SparseArray<ReleaseItem>();
+
+        ReleaseReader<ReleaseItem> reader =
+                source.newReader(getReleaseFactory(), getNewerThan(full), Integer.MAX_VALUE);
+        try {
+            ReleaseItem release;
+            while ((release = reader.next()) != null) {
+                result.put(release.versionCode, release);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading change log " + source, e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Open a {@link ChangeLogSource} for reading one release at a time.
+     *
+     * <p>
+     * Subclasses reading the change log from a source in {@link #getMasterChangeLog(boolean)} or
+     * {@link #getLocalizedChangeLog(boolean)} can use this in
+     * {@link #openMasterChangeLog(int, int)} or {@link #openLocalizedChangeLog(int, int)}.
+     * </p>
+     */
+    protected final ReleaseReader<ReleaseItem> openChangeLogSource(ChangeLogSource source,
+            int newerThan, int maxVersionCode) {
+        return source.newReader(ReleaseItem.FACTORY, newerThan, maxVersionCode);
+    }
+
+    /**
+     * Read the change log from an XML file.
+     *
+     * @param xml
+     *         The {@code XmlPullParser} instance used to read the change log.
+     * @param full
+     *         If {@code true} the full change log is read. Otherwise only the changes since the
+     *         last (saved) version are read.
+     *
+     * @return A {@code SparseArray} mapping the version codes to release information.
+     */
+    protected SparseArray<ReleaseItem> readChangeLog(XmlPullParser xml, boolean full) {
+        SparseArray<ReleaseItem> result = new SparseArray<ReleaseItem>();
+
+        ReleaseReader<ReleaseItem> reader = new XmlReleaseReader<ReleaseItem>(xml,
+                getReleaseFactory(), getNewerThan(full));
+        try {
+            ReleaseItem release;
+            while ((release = reader.next()) != null) {
+                result.put(release.versionCode, release);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a {@link Comparator} that specifies the sort order of the {@link ReleaseItem}s.
+     *
+     * <p>
+     * The default implementation returns the items in reverse order (latest version first).
+     * </p>
+     */
+    protected Comparator<ReleaseItem> getChangeLogComparator() {
+        return LATEST_VERSION_FIRST;
+    }
+
+    /**
+     * Container used to store information about a release/version.
+     */
+    public static class ReleaseItem extends Release {
         /**
-         * List of changes introduced with that release.
+         * Factory passed to the release readers.
          */
-        public final List<String> changes;
+        static final Factory<ReleaseItem> FACTORY = new Factory<ReleaseItem>() {
+            @Override
+            public ReleaseItem createRelease(int versionCode, String versionName,
+                    List<String> changes) {
+                return new ReleaseItem(versionCode, versionName, changes);
+            }
+        };
+
 
         ReleaseItem(int versionCode, String versionName, List<String> changes) {
-            this.versionCode = versionCode;
-            this.versionName = versionName;
-            this.changes = changes;
+            super(versionCode, versionName, changes);
+        }
+    }
+
+    /**
+     * A change log dialog and what it displays.
+     *
+     * @see #getVisibleDialog(boolean, String)
+     */
+    private static final class VisibleDialog {
+        final WeakReference<AlertDialog> dialog;
+        final WeakReference<Context> context;
+        final String key;
+        final String log;
+
+        VisibleDialog(AlertDialog dialog, Context context, String key, String log) {
+            this.dialog = new WeakReference<AlertDialog>(dialog);
+            this.context = new WeakReference<Context>(context);
+            this.key = key;
+            this.log = log;
         }
     }
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import android.content.Context;
+import android.text.Html;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * {@link android.widget.ListAdapter} displaying a change log.
+ *
+ * <p>
+ * Every release is displayed as a header row followed by one row per change. Rows are only
+ * created for the visible part of the list and are recycled while scrolling.
+ * </p>
+ *
+ * <p>
+ * The displayed changes can be narrowed down with {@link #getFilter()}. Only changes containing
+ * all words of the filter text, or words starting with them, are displayed.
+ * </p>
+ *
+ * @see ChangeLog#getListDialog(boolean, List)
+ */
+public class ChangeLogAdapter extends BaseAdapter implements Filterable {
+    private static final int VIEW_TYPE_RELEASE = 0;
+    private static final int VIEW_TYPE_CHANGE = 1;
+
+
+    private final LayoutInflater mInflater;
+    private final String mVersionFormat;
+    private final List<ReleaseItem> mAllReleases;
+    private List<ReleaseItem> mChangeLog;
+
+    /**
+     * Position of the header row of each release. Contains one additional element: the total
+     * number of rows.
+     */
+    private int[] mReleasePositions;
+
+    private Future<SearchIndex> mSearchIndex;
+    private ChangeLogFilter mFilter;
+
+
+    /**
+     * Create a {@code ChangeLogAdapter} instance.
+     *
+     * @param context
+     *         Context used to inflate the rows and to access the resources.
+     * @param changelog
+     *         The (partial) change log as returned by {@link ChangeLog#getChangeLog(boolean)}.
+     */
+    public ChangeLogAdapter(Context context, List<ReleaseItem> changelog) {
+        mInflater = LayoutInflater.from(context);
+        mVersionFormat = context.getResources().getString(R.string.changelog_version_format);
+        mAllReleases = changelog;
+        mChangeLog = changelog;
+        mReleasePositions = computeReleasePositions(changelog);
+    }
+
+    private static int[] computeReleasePositions(List<ReleaseItem> changelog) {
+        int releaseCount = changelog.size();
+        int[] releasePositions = new int[releaseCount + 1];
+        int position = 0;
+        for (int i = 0; i < releaseCount; i++) {
+            releasePositions[i] = position;
+            position += 1 + changelog.get(i).changes.size();
+        }
+        releasePositions[releaseCount] = position;
+
+        return releasePositions;
+    }
+
+    /**
+     * Set the search index used by {@link #getFilter()}.
+     *
+     * <p>
+     * This must be called before {@link #getFilter()}. Without a search index the filter indexes
+     * the releases passed to the constructor when it's first used.
+     * </p>
+     *
+     * @param searchIndex
+     *         An index of (at least) the releases of this adapter that might still be built in
+     *         the background.
+     */
+    void setSearchIndex(Future<SearchIndex> searchIndex) {
+        mSearchIndex = searchIndex;
+    }
+
+    @Override
+    public Filter getFilter() {
+        if (mFilter == null) {
+            mFilter = new ChangeLogFilter(this, mAllReleases, mSearchIndex);
+        }
+
+        return mFilter;
+    }
+
+    /**
+     * Replace the displayed releases with the result of the filter.
+     */
+    void setDisplayedReleases(List<ReleaseItem> releases) {
+        mChangeLog = releases;
+        mReleasePositions = computeReleasePositions(releases);
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mReleasePositions[mChangeLog.size()];
+    }
+
+    /**
+     * Returns the {@link ReleaseItem} for release header rows and the change text for change
+     * rows.
+     */
+    @Override
+    public Object getItem(int position) {
+        int releaseIndex = getReleaseIndex(position);
+        ReleaseItem release = mChangeLog.get(releaseIndex);
+
+        int changeIndex = position - mReleasePositions[releaseIndex] - 1;
+        return (changeIndex < 0) ? release : release.changes.get(changeIndex);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        // IDs are positions. The filter changes which row is displayed at a position.
+        return false;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 2;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        int releaseIndex = getReleaseIndex(position);
+        return (mReleasePositions[releaseIndex] == position) ? VIEW_TYPE_RELEASE : VIEW_TYPE_CHANGE;
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return false;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        int releaseIndex = getReleaseIndex(position);
+        ReleaseItem release = mChangeLog.get(releaseIndex);
+        int changeIndex = position - mReleasePositions[releaseIndex] - 1;
+        boolean isRelease = (changeIndex < 0);
+
+        View view = convertView;
+        if (view == null) {
+            int layoutId = isRelease ?
+                    R.layout.changelog_list_release : R.layout.changelog_list_change;
+            view = mInflater.inflate(layoutId, parent, false);
+            view.setTag(view.findViewById(R.id.changelog_text));
+        }
+
+        TextView text = (TextView) view.getTag();
+        if (isRelease) {
+            text.setText(String.format(mVersionFormat, release.versionName));
+        } else {
+            text.setText(formatChange(release.changes.get(changeIndex)));
+        }
+
+        return view;
+    }
+
+    /**
+     * Convert the text of a {@code change} element to the text displayed in the list.
+     *
+     * <p>
+     * The default implementation converts text containing HTML markup using
+     * {@link Html#fromHtml(String)} and returns all other text unmodified.
+     * </p>
+     */
+    protected CharSequence formatChange(String change) {
+        if (change == null) {
+            return "";
+        }
+
+        if (change.indexOf('<') == -1 && change.indexOf('&') == -1) {
+            return change;
+        }
+
+        return Html.fromHtml(change);
+    }
+
+    private int getReleaseIndex(int position) {
+        // Binary search for the last release whose header row is at or before 'position'
+        int low = 0;
+        int high = mChangeLog.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mReleasePositions[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Build;
+import android.util.SparseArray;
+import android.util.TypedValue;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * Process-wide cache of parsed change log resources.
+ *
+ * <p>
+ * {@link ChangeLog} instances share it with other instances that parse the change log the same way
+ * and use the same storage mode (see {@link ChangeLog#isSharedCacheEnabled()}). Entries are keyed
+ * by the file a resource ID resolves to. So changing the configuration, e.g. switching the app's
+ * language, doesn't invalidate entries for files that are still used. The cache also contains the
+ * merged change logs of locale chains (see {@link ChangeLog#isLocaleChainEnabled()}). It is
+ * cleared when the system asks the app to trim its memory usage.
+ * </p>
+ *
+ * <p>
+ * Automatic invalidation requires Android 4.0 (API 14). On older versions apps can call
+ * {@link #onTrimMemory(int)} from their {@code Application} class.
+ * </p>
+ */
+public final class ChangeLogCache {
+    private static final Map<String, Entry> sEntries = new HashMap<String, Entry>();
+    private static final Map<String, MergedEntry> sMergedEntries =
+            new HashMap<String, MergedEntry>();
+    private static boolean sCallbacksRegistered = false;
+
+
+    private ChangeLogCache() {
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public static void clear() {
+        synchronized (sEntries) {
+            sEntries.clear();
+            sMergedEntries.clear();
+        }
+    }
+
+    /**
+     * Invalidate the cache because the configuration has changed.
+     *
+     * <p>
+     * Entries are keyed by resource file, so this isn't necessary anymore and isn't called
+     * automatically. It removes all entries.
+     * </p>
+     */
+    public static void onConfigurationChanged() {
+        clear();
+    }
+
+    /**
+     * Release memory in response to {@code ComponentCallbacks2.onTrimMemory(int)}.
+     *
+     * <p>
+     * This is called automatically on Android 4.0 (API 14) and newer.
+     * </p>
+     *
+     * @param level
+     *         The trim level passed to {@code onTrimMemory(int)}.
+     */
+    public static void onTrimMemory(int level) {
+        // Once memory is running low or the UI is hidden (all levels from TRIM_MEMORY_RUNNING_LOW
+        // upwards) parsing the change log again is cheaper than holding on to it.
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            clear();
+        }
+    }
+
+    /**
+     * Get the cached change log for a resource.
+     *
+     * @param variant
+     *         Identifies the kind of {@code ReleaseItem}s the caller creates. Entries are only
+     *         shared between callers using the same variant.
+     * @param resources
+     *         The {@code Resources} instance used to resolve {@code resId}.
+     * @param resId
+     *         The resource ID of the change log.
+     * @param newerThan
+     *         Only releases with a version code higher than this are requested.
+     *         {@link ReleaseReader#ALL_VERSIONS} requests the full change log.
+     *
+     * @return A new {@code SparseArray} containing the requested releases. Or {@code null} if the
+     *         cache doesn't contain the requested releases.
+     */
+    static SparseArray<ReleaseItem> get(String variant, Resources resources, int resId,
+            int newerThan) {
+        String key = variant + '\n' + getSourceKey(resources, resId);
+
+        Entry entry;
+        synchronized (sEntries) {
+            entry = sEntries.get(key);
+        }
+
+        if (entry == null || entry.newerThan > newerThan) {
+            return null;
+        }
+
+        return copyNewerThan(entry.releases, newerThan);
+    }
+
+    /**
+     * Add a parsed change log to the cache.
+     *
+     * @param context
+     *         Used to register for memory trim callbacks.
+     * @param variant
+     *         Identifies the kind of {@code ReleaseItem}s in {@code releases}. See
+     *         {@link #get(String, Resources, int, int)}.
+     * @param resources
+     *         The {@code Resources} instance used to resolve {@code resId}.
+     * @param resId
+     *         The resource ID of the change log.
+     * @param newerThan
+     *         {@code releases} contains all releases with a version code higher than this.
+     *         {@link ReleaseReader#ALL_VERSIONS} if {@code releases} contains the full change log.
+     * @param releases
+     *         The parsed change log. The cache keeps its own copy.
+     */
+    static void put(Context context, String variant, Resources resources, int resId,
+            int newerThan, SparseArray<ReleaseItem> releases) {
+        registerCallbacks(context);
+
+        String key = variant + '\n' + getSourceKey(resources, resId);
+        Entry entry = new Entry(newerThan, copyNewerThan(releases, newerThan));
+
+        synchronized (sEntries) {
+            Entry existingEntry = sEntries.get(key);
+
+            // Don't replace an entry that covers more releases
+            if (existingEntry == null || existingEntry.newerThan > newerThan) {
+                sEntries.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Get a cached merged change log.
+     *
+     * @param key
+     *         The variant (see {@link #get(String, Resources, int, int)}) followed by the source
+     *         keys of all merged change logs (see {@link #getSourceKey(Resources, int)}).
+     * @param newerThan
+     *         Only releases with a version code higher than this are requested.
+     *         {@link ReleaseReader#ALL_VERSIONS} requests the full change log.
+     *
+     * @return The requested releases or {@code null} if the cache doesn't contain them.
+     */
+    static ReleaseIndex getMerged(String key, int newerThan) {
+        MergedEntry entry;
+        synchronized (sEntries) {
+            entry = sMergedEntries.get(key);
+        }
+
+        if (entry == null || entry.newerThan > newerThan) {
+            return null;
+        }
+
+        return entry.releases.newerThan(newerThan);
+    }
+
+    /**
+     * Add a merged change log to the cache.
+     *
+     * @param context
+     *         Used to register for memory trim callbacks.
+     * @param key
+     *         The variant (see {@link #get(String, Resources, int, int)}) followed by the source
+     *         keys of all merged change logs (see {@link #getSourceKey(Resources, int)}).
+     * @param newerThan
+     *         {@code releases} contains all releases with a version code higher than this.
+     *         {@link ReleaseReader#ALL_VERSIONS} if {@code releases} contains the full change log.
+     * @param releases
+     *         The merged change log.
+     */
+    static void putMerged(Context context, String key, int newerThan, ReleaseIndex releases) {
+        registerCallbacks(context);
+
+        synchronized (sEntries) {
+            MergedEntry existingEntry = sMergedEntries.get(key);
+
+            // Don't replace an entry that covers more releases
+            if (existingEntry == null || existingEntry.newerThan > newerThan) {
+                sMergedEntries.put(key, new MergedEntry(newerThan, releases));
+            }
+        }
+    }
+
+    /**
+     * Get a string identifying the file {@code resId} resolves to.
+     *
+     * <p>
+     * Resources with different configurations resolving to the same file return the same key.
+     * </p>
+     */
+    static String getSourceKey(Resources resources, int resId) {
+        TypedValue value = new TypedValue();
+        try {
+            resources.getValue(resId, value, true);
+            if (value.string != null) {
+                return value.string.toString();
+            }
+        } catch (Resources.NotFoundException e) {
+            // Fall through
+        }
+
+        Locale locale = resources.getConfiguration().locale;
+        return resId + ":" + ((locale != null) ? locale.toString() : "");
+    }
+
+    private static SparseArray<ReleaseItem> copyNewerThan(SparseArray<ReleaseItem> releases,
+            int newerThan) {
+        // Keys are sorted in ascending order. So find the first release that is newer and copy
+        // everything from there.
+        int end = releases.size();
+        int start = end;
+        while (start > 0 && releases.keyAt(start - 1) > newerThan) {
+            start--;
+        }
+
+        SparseArray<ReleaseItem> result = new SparseArray<ReleaseItem>(end - start);
+        for (int i = start; i < end; i++) {
+            result.append(releases.keyAt(i), releases.valueAt(i));
+        }
+
+        return result;
+    }
+
+    private static void registerCallbacks(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+
+        synchronized (ChangeLogCache.class) {
+            if (sCallbacksRegistered) {
+                return;
+            }
+            sCallbacksRegistered = true;
+        }
+
+        context.getApplicationContext().registerComponentCallbacks(new TrimMemoryCallbacks());
+    }
+
+
+    private static final class Entry {
+        final int newerThan;
+        final SparseArray<ReleaseItem> releases;
+
+        Entry(int newerThan, SparseArray<ReleaseItem> releases) {
+            this.newerThan = newerThan;
+            this.releases = releases;
+        }
+    }
+
+    private static final class MergedEntry {
+        final int newerThan;
+        final ReleaseIndex releases;
+
+        MergedEntry(int newerThan, ReleaseIndex releases) {
+            this.newerThan = newerThan;
+            this.releases = releases;
+        }
+    }
+
+    /**
+     * Only loaded on Android 4.0 (API 14) and newer.
+     */
+    private static final class TrimMemoryCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            ChangeLogCache.onTrimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // Entries are keyed by resource file, so they stay valid
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+    }
+}
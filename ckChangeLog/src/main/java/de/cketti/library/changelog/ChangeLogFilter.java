@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import android.util.Log;
+import android.util.SparseArray;
+import android.widget.Filter;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * {@link Filter} of {@link ChangeLogAdapter} displaying only the changes matching a query.
+ *
+ * <p>
+ * Queries are answered using a {@link SearchIndex}. If the adapter was supplied with an index
+ * that is built in the background, the first query waits for it. Otherwise an index of the
+ * displayed releases is built on the filter thread.
+ * </p>
+ */
+final class ChangeLogFilter extends Filter {
+    private final ChangeLogAdapter mAdapter;
+    private final List<ReleaseItem> mReleases;
+    private final Future<SearchIndex> mSearchIndexFuture;
+
+    // Only accessed on the filter thread
+    private SearchIndex mSearchIndex;
+
+
+    ChangeLogFilter(ChangeLogAdapter adapter, List<ReleaseItem> releases,
+            Future<SearchIndex> searchIndex) {
+        mAdapter = adapter;
+        mReleases = releases;
+        mSearchIndexFuture = searchIndex;
+    }
+
+    @Override
+    protected FilterResults performFiltering(CharSequence constraint) {
+        List<ReleaseItem> releases = mReleases;
+
+        String query = (constraint == null) ? null : constraint.toString();
+        if (!SearchIndex.tokenize(query).isEmpty()) {
+            List<SearchIndex.Match> matches = getSearchIndex().search(query);
+            releases = filterReleases(mReleases, matches);
+        }
+
+        FilterResults results = new FilterResults();
+        results.values = releases;
+        results.count = releases.size();
+        return results;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void publishResults(CharSequence constraint, FilterResults results) {
+        mAdapter.setDisplayedReleases((List<ReleaseItem>) results.values);
+    }
+
+    private SearchIndex getSearchIndex() {
+        if (mSearchIndex != null) {
+            return mSearchIndex;
+        }
+
+        if (mSearchIndexFuture != null) {
+            try {
+                mSearchIndex = mSearchIndexFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(ChangeLog.LOG_TAG, "Error building search index", e);
+            }
+        }
+
+        if (mSearchIndex == null) {
+            mSearchIndex = SearchIndex.build(mReleases);
+        }
+
+        return mSearchIndex;
+    }
+
+    /**
+     * Create copies of the releases containing only the matching changes.
+     *
+     * @param releases
+     *         The releases to filter. The order is retained.
+     * @param matches
+     *         The matching changes as returned by {@link SearchIndex#search(String)}. Matches of
+     *         releases not in {@code releases} are ignored.
+     *
+     * @return The releases with at least one matching change.
+     */
+    static List<ReleaseItem> filterReleases(List<ReleaseItem> releases,
+            List<SearchIndex.Match> matches) {
+        SparseArray<ReleaseItem> releasesByVersion = new SparseArray<ReleaseItem>(releases.size());
+        for (ReleaseItem release : releases) {
+            releasesByVersion.put(release.versionCode, release);
+        }
+
+        SparseArray<List<String>> matchingChanges = new SparseArray<List<String>>();
+        for (SearchIndex.Match match : matches) {
+            ReleaseItem release = releasesByVersion.get(match.versionCode);
+            if (release == null || match.changeIndex >= release.changes.size()) {
+                continue;
+            }
+
+            List<String> changes = matchingChanges.get(match.versionCode);
+            if (changes == null) {
+                changes = new ArrayList<String>();
+                matchingChanges.put(match.versionCode, changes);
+            }
+            changes.add(release.changes.get(match.changeIndex));
+        }
+
+        List<ReleaseItem> result = new ArrayList<ReleaseItem>(matchingChanges.size());
+        for (ReleaseItem release : releases) {
+            List<String> changes = matchingChanges.get(release.versionCode);
+            if (changes != null) {
+                result.add(new ReleaseItem(release.versionCode, release.versionName, changes));
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.app.AlertDialog;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * Load a change log on a background thread and deliver the result on the main thread.
+ *
+ * <p>
+ * Creating a {@link ChangeLog} instance reads from {@code SharedPreferences} and the
+ * {@code PackageManager}, and rendering the change log means parsing XML files. Use this class to
+ * keep that work off the main thread, e.g. in your activity's {@code onCreate()} method:
+ * </p>
+ * <pre>
+ * mChangeLogRequest = ChangeLogLoader.loadLogDialogIfFirstRun(
+ *         new ChangeLogLoader.Factory() {
+ *             public ChangeLog create() {
+ *                 return new ChangeLog(MainActivity.this);
+ *             }
+ *         },
+ *         new ChangeLogLoader.Callback() {
+ *             public void onChangeLogLoaded(ChangeLogLoader.Result result) {
+ *                 if (result.hasLog()) {
+ *                     result.createDialog().show();
+ *                 }
+ *             }
+ *         });
+ * </pre>
+ *
+ * <p>
+ * Call {@link Request#cancel()} in {@code onDestroy()} so the callback isn't invoked after the
+ * activity has been destroyed.
+ * </p>
+ */
+public final class ChangeLogLoader {
+    private static final int MODE_LOG = 0;
+    private static final int MODE_LOG_IF_FIRST_RUN = 1;
+    private static final int MODE_FULL_LOG = 2;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static ExecutorService sDefaultExecutor;
+
+
+    /**
+     * Creates the {@link ChangeLog} instance. This is called on a background thread.
+     */
+    public interface Factory {
+        ChangeLog create();
+    }
+
+    /**
+     * Receives the result of a load operation. This is called on the main thread.
+     *
+     * <p>
+     * The callback is also invoked if loading the change log failed. Use {@link Result#isFailed()}
+     * to check for that.
+     * </p>
+     */
+    public interface Callback {
+        void onChangeLogLoaded(Result result);
+    }
+
+
+    private ChangeLogLoader() {
+    }
+
+    /**
+     * Asynchronously load the contents of {@link ChangeLog#getLogDialog()}.
+     *
+     * @see #loadLogDialog(Factory, Executor, Callback)
+     */
+    public static Request loadLogDialog(Factory factory, Callback callback) {
+        return loadLogDialog(factory, getDefaultExecutor(), callback);
+    }
+
+    /**
+     * Asynchronously load the contents of {@link ChangeLog#getLogDialog()}.
+     *
+     * @param factory
+     *         Creates the {@code ChangeLog} instance on a background thread.
+     * @param executor
+     *         The {@code Executor} used to run the background work.
+     * @param callback
+     *         Receives the result on the main thread.
+     *
+     * @return A {@link Request} that can be used to cancel the operation.
+     */
+    public static Request loadLogDialog(Factory factory, Executor executor, Callback callback) {
+        return load(factory, MODE_LOG, executor, callback);
+    }
+
+    /**
+     * Asynchronously load the contents of {@link ChangeLog#getLogDialog()}, but only if this is the
+     * first run of this app version.
+     *
+     * @see #loadLogDialogIfFirstRun(Factory, Executor, Callback)
+     */
+    public static Request loadLogDialogIfFirstRun(Factory factory, Callback callback) {
+        return loadLogDialogIfFirstRun(factory, getDefaultExecutor(), callback);
+    }
+
+    /**
+     * Asynchronously load the contents of {@link ChangeLog#getLogDialog()}, but only if this is the
+     * first run of this app version.
+     *
+     * <p>
+     * If {@link ChangeLog#hasUnseenChanges()} returns {@code false} the change log isn't read at
+     * all and {@link Result#hasLog()} of the delivered result returns {@code false}. This is also
+     * the case if the app version changed but the change log has no entries for the new version.
+     * </p>
+     *
+     * @param factory
+     *         Creates the {@code ChangeLog} instance on a background thread.
+     * @param executor
+     *         The {@code Executor} used to run the background work.
+     * @param callback
+     *         Receives the result on the main thread.
+     *
+     * @return A {@link Request} that can be used to cancel the operation.
+     */
+    public static Request loadLogDialogIfFirstRun(Factory factory, Executor executor,
+            Callback callback) {
+        return load(factory, MODE_LOG_IF_FIRST_RUN, executor, callback);
+    }
+
+    /**
+     * Asynchronously load the contents of {@link ChangeLog#getFullLogDialog()}.
+     *
+     * @see #loadFullLogDialog(Factory, Executor, Callback)
+     */
+    public static Request loadFullLogDialog(Factory factory, Callback callback) {
+        return loadFullLogDialog(factory, getDefaultExecutor(), callback);
+    }
+
+    /**
+     * Asynchronously load the contents of {@link ChangeLog#getFullLogDialog()}.
+     *
+     * @param factory
+     *         Creates the {@code ChangeLog} instance on a background thread.
+     * @param executor
+     *         The {@code Executor} used to run the background work.
+     * @param callback
+     *         Receives the result on the main thread.
+     *
+     * @return A {@link Request} that can be used to cancel the operation.
+     */
+    public static Request loadFullLogDialog(Factory factory, Executor executor,
+            Callback callback) {
+        return load(factory, MODE_FULL_LOG, executor, callback);
+    }
+
+    private static Request load(Factory factory, int mode, Executor executor, Callback callback) {
+        if (factory == null || executor == null || callback == null) {
+            throw new IllegalArgumentException("Arguments must not be null");
+        }
+
+        final Request request = new Request(factory, mode, callback);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                request.execute();
+            }
+        });
+
+        return request;
+    }
+
+    /**
+     * Get the {@code Executor} that is used when none is supplied by the caller.
+     *
+     * <p>
+     * It runs tasks sequentially on a single low-priority background thread.
+     * </p>
+     */
+    static synchronized Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ckChangeLog");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+
+        return sDefaultExecutor;
+    }
+
+
+    /**
+     * A pending load operation.
+     */
+    public static final class Request {
+        private final Factory mFactory;
+        private final int mMode;
+        private volatile Callback mCallback;
+        private volatile boolean mCancelled;
+        private Runnable mDelivery;
+        private Result mResult;
+
+        Request(Factory factory, int mode, Callback callback) {
+            mFactory = factory;
+            mMode = mode;
+            mCallback = callback;
+        }
+
+        /**
+         * Cancel this operation.
+         *
+         * <p>
+         * This must be called on the main thread. After this method returns the callback will not
+         * be invoked. Background work that is already running is stopped as soon as possible.
+         * </p>
+         */
+        public void cancel() {
+            mCancelled = true;
+            mCallback = null;
+
+            Runnable delivery;
+            Result result;
+            synchronized (this) {
+                delivery = mDelivery;
+                result = mResult;
+                mDelivery = null;
+                mResult = null;
+            }
+
+            if (delivery != null) {
+                sMainHandler.removeCallbacks(delivery);
+                result.discard();
+            }
+        }
+
+        /**
+         * Check whether this operation has been cancelled.
+         */
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        void execute() {
+            if (mCancelled) {
+                return;
+            }
+
+            Result loadedResult;
+            try {
+                loadedResult = loadResult();
+            } catch (RuntimeException e) {
+                Log.e(ChangeLog.LOG_TAG, "Error loading change log", e);
+                loadedResult = new Result(e);
+            }
+
+            final Result result = loadedResult;
+
+            if (result == null) {
+                return;
+            }
+
+            Runnable delivery = new Runnable() {
+                @Override
+                public void run() {
+                    Callback callback = mCallback;
+                    synchronized (Request.this) {
+                        mDelivery = null;
+                        mResult = null;
+                    }
+
+                    if (!mCancelled && callback != null) {
+                        mCallback = null;
+                        callback.onChangeLogLoaded(result);
+                    }
+                }
+            };
+
+            synchronized (this) {
+                if (mCancelled) {
+                    result.discard();
+                    return;
+                }
+                mDelivery = delivery;
+                mResult = result;
+            }
+
+            sMainHandler.post(delivery);
+        }
+
+        private Result loadResult() {
+            ChangeLog changeLog = mFactory.create();
+            if (mCancelled) {
+                return null;
+            }
+
+            boolean full;
+            switch (mMode) {
+                case MODE_LOG_IF_FIRST_RUN: {
+                    if (!changeLog.hasUnseenChanges()) {
+                        return new Result(changeLog, false);
+                    }
+                    full = changeLog.isFirstRunEver();
+                    break;
+                }
+                case MODE_LOG: {
+                    full = changeLog.isFirstRunEver();
+                    break;
+                }
+                default: {
+                    full = true;
+                    break;
+                }
+            }
+
+            if (changeLog.isListViewEnabled()) {
+                List<ReleaseItem> releases = changeLog.getChangeLog(full);
+                return mCancelled ? null : new Result(changeLog, full, releases);
+            } else if (full && changeLog.isPagingEnabled()) {
+                ChangeLogPager pager = changeLog.createPager();
+                String firstPage = changeLog.renderFirstPage(pager);
+                if (mCancelled) {
+                    pager.close();
+                    return null;
+                }
+                return new Result(changeLog, firstPage, pager);
+            }
+
+            String log = changeLog.getLog(full);
+            return mCancelled ? null : new Result(changeLog, full, log);
+        }
+    }
+
+    /**
+     * The result of a load operation.
+     */
+    public static final class Result {
+        private final ChangeLog mChangeLog;
+        private final boolean mFull;
+        private final String mLog;
+        private final List<ReleaseItem> mReleases;
+        private final ChangeLogPager mPager;
+        private final RuntimeException mError;
+        private boolean mPagerUsed;
+
+        Result(ChangeLog changeLog, boolean full) {
+            this(changeLog, full, null, null, null, null);
+        }
+
+        Result(ChangeLog changeLog, boolean full, String log) {
+            this(changeLog, full, log, null, null, null);
+        }
+
+        Result(ChangeLog changeLog, boolean full, List<ReleaseItem> releases) {
+            this(changeLog, full, null, releases, null, null);
+        }
+
+        Result(ChangeLog changeLog, String firstPage, ChangeLogPager pager) {
+            this(changeLog, true, firstPage, null, pager, null);
+        }
+
+        Result(RuntimeException error) {
+            this(null, false, null, null, null, error);
+        }
+
+        private Result(ChangeLog changeLog, boolean full, String log,
+                List<ReleaseItem> releases, ChangeLogPager pager, RuntimeException error) {
+            mChangeLog = changeLog;
+            mFull = full;
+            mLog = log;
+            mReleases = releases;
+            mPager = pager;
+            mError = error;
+        }
+
+        /**
+         * Release the resources of a result that is never delivered.
+         */
+        void discard() {
+            if (mPager != null) {
+                mPager.close();
+            }
+        }
+
+        /**
+         * Check whether the change log couldn't be loaded because of an error.
+         *
+         * <p>
+         * In that case {@link #hasLog()} returns {@code false} and {@link #getError()} returns the
+         * exception that was thrown by the {@link Factory} or while reading the change log.
+         * </p>
+         */
+        public boolean isFailed() {
+            return mError != null;
+        }
+
+        /**
+         * Get the exception that caused the load operation to fail.
+         *
+         * @return The exception or {@code null} if the operation didn't fail.
+         */
+        public RuntimeException getError() {
+            return mError;
+        }
+
+        /**
+         * Get the {@code ChangeLog} instance that was created by the {@link Factory}.
+         *
+         * @return The {@code ChangeLog} instance or {@code null} if the operation failed.
+         */
+        public ChangeLog getChangeLog() {
+            return mChangeLog;
+        }
+
+        /**
+         * Check whether the full change log was loaded.
+         */
+        public boolean isFull() {
+            return mFull;
+        }
+
+        /**
+         * Check whether a change log was loaded.
+         *
+         * @return {@code false} if the operation was started with
+         *         {@link #loadLogDialogIfFirstRun(Factory, Executor, Callback)} and there are no
+         *         unseen changes (see {@link ChangeLog#hasUnseenChanges()}), or if the operation
+         *         failed (see {@link #isFailed()}). {@code true} otherwise.
+         */
+        public boolean hasLog() {
+            return mLog != null || mReleases != null;
+        }
+
+        /**
+         * Get the loaded change log as HTML string.
+         *
+         * <p>
+         * If the full change log is displayed one page at a time (see
+         * {@link ChangeLog#isPagingEnabled()}), this is a document containing the first page.
+         * </p>
+         *
+         * @return The change log or {@code null} if {@link #hasLog()} returns {@code false} or the
+         *         change log is displayed in a {@code ListView}.
+         *
+         * @see ChangeLog#isListViewEnabled()
+         */
+        public String getLog() {
+            return mLog;
+        }
+
+        /**
+         * Get the loaded change log as list of releases.
+         *
+         * @return The change log or {@code null} if {@link #hasLog()} returns {@code false} or the
+         *         change log is displayed in a {@code WebView}.
+         *
+         * @see ChangeLog#isListViewEnabled()
+         */
+        public List<ReleaseItem> getReleases() {
+            return mReleases;
+        }
+
+        /**
+         * Create the change log dialog.
+         *
+         * <p>
+         * This must be called on the main thread. If the full change log is displayed one page
+         * at a time (see {@link ChangeLog#isPagingEnabled()}), the following pages are loaded
+         * while the user scrolls. Only the first dialog created from this result uses the loaded
+         * page. Further calls read the first page again.
+         * </p>
+         *
+         * @return A dialog displaying the loaded change log.
+         *
+         * @throws IllegalStateException
+         *         If no change log was loaded.
+         */
+        public AlertDialog createDialog() {
+            if (mPager != null) {
+                if (!mPagerUsed) {
+                    mPagerUsed = true;
+                    return mChangeLog.getPagedDialog(mPager, mLog);
+                }
+                return mChangeLog.getFullLogDialog();
+            } else if (mReleases != null) {
+                return mChangeLog.getListDialog(mFull, mReleases);
+            } else if (mLog != null) {
+                return mChangeLog.getDialog(mFull, mLog);
+            }
+
+            throw new IllegalStateException("No change log was loaded");
+        }
+    }
+}
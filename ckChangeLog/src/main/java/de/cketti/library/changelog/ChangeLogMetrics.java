@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+
+
+/**
+ * Receives performance metrics from all {@link ChangeLog} instances.
+ *
+ * <p>
+ * All methods do nothing by default. Subclasses override the ones they are interested in. Use
+ * {@link #setInstance(ChangeLogMetrics)} to start receiving metrics, preferably once in
+ * {@code Application.onCreate()}. No metrics are collected while no instance is set.
+ * </p>
+ *
+ * <p>
+ * Callbacks are invoked on the thread doing the work. That's usually the main thread, but may be
+ * a background thread when using {@link ChangeLogLoader} or
+ * {@link ChangeLog#isParallelParsingEnabled() parallel parsing}.
+ * </p>
+ *
+ * @see TraceMetrics
+ */
+public abstract class ChangeLogMetrics {
+    /**
+     * The phases of displaying a change log.
+     */
+    public enum Phase {
+        /**
+         * Looking up the current version in the constructor of {@link ChangeLog}.
+         */
+        INIT,
+
+        /**
+         * Reading the master change log.
+         */
+        READ_MASTER,
+
+        /**
+         * Reading the localized change log.
+         */
+        READ_LOCALIZED,
+
+        /**
+         * Merging the master and the localized change log.
+         */
+        MERGE,
+
+        /**
+         * Rendering the change log as HTML.
+         */
+        RENDER,
+
+        /**
+         * Creating the change log dialog, including its {@code WebView} or {@code ListView}.
+         */
+        CREATE_DIALOG,
+
+        /**
+         * Saving the current version code.
+         */
+        SAVE_VERSION
+    }
+
+    /**
+     * The caches used by {@link ChangeLog}.
+     */
+    public enum Cache {
+        /**
+         * The process-wide {@link ChangeLogCache}.
+         */
+        SHARED,
+
+        /**
+         * The on-disk {@link HtmlCache}.
+         */
+        HTML,
+
+        /**
+         * The persisted snapshot of the full change log. A lookup counts as hit if the snapshot
+         * could be used, even if new releases had to be read.
+         *
+         * @see ChangeLog#isSnapshotEnabled()
+         */
+        SNAPSHOT,
+
+        /**
+         * The persisted {@link SearchIndex}. A lookup counts as hit if the index was created for
+         * the installed app version.
+         *
+         * @see ChangeLog#getSearchIndex()
+         */
+        SEARCH_INDEX,
+
+        /**
+         * The persisted change log of a {@link ChangeLogModule}. A lookup counts as hit if the
+         * module's change log didn't have to be read.
+         *
+         * @see ChangeLog#getModules()
+         */
+        MODULE
+    }
+
+
+    private static volatile ChangeLogMetrics sInstance;
+
+
+    /**
+     * Set the instance receiving the metrics of all {@code ChangeLog} instances.
+     *
+     * @param metrics
+     *         The new instance or {@code null} to stop collecting metrics.
+     */
+    public static void setInstance(ChangeLogMetrics metrics) {
+        sInstance = metrics;
+    }
+
+    /**
+     * Called when a phase starts.
+     */
+    public void onPhaseStarted(Phase phase) {
+        // Do nothing
+    }
+
+    /**
+     * Called when a phase has finished.
+     *
+     * @param durationNanos
+     *         The time since the phase started in nanoseconds.
+     */
+    public void onPhaseFinished(Phase phase, long durationNanos) {
+        // Do nothing
+    }
+
+    /**
+     * Called after a change log has been read.
+     *
+     * @param phase
+     *         {@link Phase#READ_MASTER} or {@link Phase#READ_LOCALIZED}.
+     * @param releaseCount
+     *         The number of releases read.
+     * @param changeCount
+     *         The total number of changes of all releases read.
+     */
+    public void onChangeLogRead(Phase phase, int releaseCount, int changeCount) {
+        // Do nothing
+    }
+
+    /**
+     * Called after a change log has been rendered as HTML.
+     *
+     * @param byteCount
+     *         The size of the HTML document in bytes when encoded as UTF-8.
+     */
+    public void onLogRendered(int byteCount) {
+        // Do nothing
+    }
+
+    /**
+     * Called after looking up an entry in one of the caches.
+     *
+     * @param hit
+     *         {@code true} if the entry was found, {@code false} otherwise.
+     */
+    public void onCacheLookup(Cache cache, boolean hit) {
+        // Do nothing
+    }
+
+    /**
+     * Returns whether metrics are collected.
+     */
+    static boolean isEnabled() {
+        return sInstance != null;
+    }
+
+    /**
+     * Report the start of a phase.
+     *
+     * <p>
+     * Always call {@link PhaseTimer#end()} on the returned timer, using {@code try}/{@code finally}
+     * if the phase may throw. Otherwise e.g. {@link TraceMetrics} leaves a section open.
+     * </p>
+     *
+     * @return The timer used to report the end of the phase.
+     */
+    static PhaseTimer begin(Phase phase) {
+        ChangeLogMetrics metrics = sInstance;
+        if (metrics == null) {
+            return PhaseTimer.DISABLED;
+        }
+
+        metrics.onPhaseStarted(phase);
+        return new PhaseTimer(metrics, phase, System.nanoTime());
+    }
+
+    static void changeLogRead(Phase phase, int releaseCount, int changeCount) {
+        ChangeLogMetrics metrics = sInstance;
+        if (metrics != null) {
+            metrics.onChangeLogRead(phase, releaseCount, changeCount);
+        }
+    }
+
+    static void logRendered(CharSequence html) {
+        ChangeLogMetrics metrics = sInstance;
+        if (metrics != null) {
+            metrics.onLogRendered(utf8Length(html, 0, html.length()));
+        }
+    }
+
+    static void logRendered(CountingAppendable out) {
+        ChangeLogMetrics metrics = sInstance;
+        if (metrics != null) {
+            metrics.onLogRendered(out.getByteCount());
+        }
+    }
+
+    static void cacheLookup(Cache cache, boolean hit) {
+        ChangeLogMetrics metrics = sInstance;
+        if (metrics != null) {
+            metrics.onCacheLookup(cache, hit);
+        }
+    }
+
+
+    /**
+     * A phase that has been started by {@link #begin(Phase)}.
+     *
+     * <p>
+     * The end of the phase is reported to the {@code ChangeLogMetrics} instance that received its
+     * start, even if {@link #setInstance(ChangeLogMetrics)} was called in between.
+     * </p>
+     */
+    static final class PhaseTimer {
+        static final PhaseTimer DISABLED = new PhaseTimer(null, null, 0);
+
+        private final ChangeLogMetrics mMetrics;
+        private final Phase mPhase;
+        private final long mStartTime;
+
+        PhaseTimer(ChangeLogMetrics metrics, Phase phase, long startTime) {
+            mMetrics = metrics;
+            mPhase = phase;
+            mStartTime = startTime;
+        }
+
+        /**
+         * Report the end of the phase.
+         */
+        void end() {
+            if (mMetrics != null) {
+                mMetrics.onPhaseFinished(mPhase, System.nanoTime() - mStartTime);
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes needed to encode a part of a text as UTF-8.
+     *
+     * <p>
+     * Each half of a surrogate pair is counted as two bytes, so a pair split across two calls adds
+     * up to the four bytes of the encoded code point.
+     * </p>
+     */
+    static int utf8Length(CharSequence text, int start, int end) {
+        int byteCount = 0;
+        for (int i = start; i < end; i++) {
+            byteCount += utf8Length(text.charAt(i));
+        }
+
+        return byteCount;
+    }
+
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800 ||
+                (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)) {
+            return 2;
+        }
+
+        return 3;
+    }
+
+    /**
+     * Counts the UTF-8 encoded size of the characters written to an {@code Appendable}.
+     */
+    static final class CountingAppendable implements Appendable {
+        private final Appendable mOut;
+        private int mByteCount = 0;
+
+        CountingAppendable(Appendable out) {
+            mOut = out;
+        }
+
+        int getByteCount() {
+            return mByteCount;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            mOut.append(csq);
+            mByteCount += (csq == null) ? 4 : utf8Length(csq, 0, csq.length());
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            mOut.append(csq, start, end);
+            mByteCount += (csq == null) ? end - start : utf8Length(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            mOut.append(c);
+            mByteCount += utf8Length(c);
+            return this;
+        }
+    }
+}
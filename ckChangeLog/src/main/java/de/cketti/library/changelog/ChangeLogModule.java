@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+
+/**
+ * The change log of a feature module or library that is merged into the app's change log.
+ *
+ * <p>
+ * Each module has its own master change log and, optionally, localized change logs, using the same
+ * format as {@code changelog_master.xml} and {@code changelog.xml}. Since all modules share the
+ * app's resources, the files need unique names, e.g. {@code res/xml/changelog_master_sync.xml} and
+ * {@code res/xml-de/changelog_sync.xml}.
+ * </p>
+ *
+ * @see ChangeLog#getModules()
+ */
+public final class ChangeLogModule {
+    private final int mMasterResId;
+    private final int mLocalizedResId;
+
+
+    /**
+     * Create a {@code ChangeLogModule} instance for a module without translations.
+     *
+     * @param masterResId
+     *         The XML resource containing the master change log, e.g.
+     *         {@code R.xml.changelog_master_sync}.
+     */
+    public ChangeLogModule(int masterResId) {
+        this(masterResId, 0);
+    }
+
+    /**
+     * Create a {@code ChangeLogModule} instance.
+     *
+     * @param masterResId
+     *         The XML resource containing the master change log, e.g.
+     *         {@code R.xml.changelog_master_sync}.
+     * @param localizedResId
+     *         The XML resource containing the localized change log, e.g.
+     *         {@code R.xml.changelog_sync}. Or {@code 0} if there are no translations.
+     */
+    public ChangeLogModule(int masterResId, int localizedResId) {
+        mMasterResId = masterResId;
+        mLocalizedResId = localizedResId;
+    }
+
+    int getMasterResId() {
+        return mMasterResId;
+    }
+
+    int getLocalizedResId() {
+        return mLocalizedResId;
+    }
+
+    boolean hasLocalizedChangeLog() {
+        return mLocalizedResId != 0;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.annotation.TargetApi;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * Displays a change log in a {@link WebView} one page at a time.
+ *
+ * <p>
+ * The document initially contains only the first page of releases. A script requests the next
+ * page when the user scrolls close to the end of the document by navigating to
+ * {@link #MORE_URL}. This navigation is intercepted, the next page is read from the
+ * {@link ReleaseReader} on a background thread and then appended to the document. So the time it
+ * takes to display the change log doesn't depend on the length of the change log.
+ * </p>
+ *
+ * @see ChangeLog#isPagingEnabled()
+ */
+final class ChangeLogPager extends WebViewClient {
+    private static final String MORE_URL = "ckchangelog://more";
+    private static final String MORE_ELEMENT_ID = "ckchangelog-more";
+
+    /**
+     * Added to the end of the document. Requests the next page when the end of the document is
+     * less than a screen height away and defines the function used to append a page.
+     */
+    private static final String SCRIPT = "<div id=\"" + MORE_ELEMENT_ID + "\"></div>" +
+            "<script type=\"text/javascript\">(function() {" +
+            "var loading = false, done = false;" +
+            "function check() {" +
+            "if (loading || done) return;" +
+            "if (window.pageYOffset + 2 * window.innerHeight >= document.body.scrollHeight) {" +
+            "loading = true; window.location.href = '" + MORE_URL + "';" +
+            "}" +
+            "}" +
+            "window.ckChangeLogAppend = function(html, last) {" +
+            "var more = document.getElementById('" + MORE_ELEMENT_ID + "');" +
+            "var page = document.createElement('div');" +
+            "page.innerHTML = html;" +
+            "more.parentNode.insertBefore(page, more);" +
+            "loading = false; done = last; check();" +
+            "};" +
+            "window.onscroll = check; window.onresize = check; window.onload = check;" +
+            "})();</script>";
+
+
+    private final ReleaseReader<ReleaseItem> mReader;
+    private final HtmlRenderer mRenderer;
+    private final int mPageSize;
+    private final Executor mExecutor;
+    private WebView mWebView;
+    private boolean mLoading;
+    private volatile boolean mClosed;
+    private volatile boolean mDetached;
+
+
+    /**
+     * Create a {@code ChangeLogPager} instance.
+     *
+     * @param reader
+     *         The reader the releases are read from. It is only used on a thread of
+     *         {@code executor} after {@link #renderFirstPage()} returned.
+     * @param executor
+     *         The {@code Executor} used to read the following pages.
+     */
+    ChangeLogPager(ReleaseReader<ReleaseItem> reader, HtmlRenderer renderer, int pageSize,
+            Executor executor) {
+        mReader = reader;
+        mRenderer = renderer;
+        mPageSize = pageSize;
+        mExecutor = executor;
+    }
+
+    /**
+     * Render an HTML document containing the first page of releases.
+     *
+     * <p>
+     * This is called on the thread creating the dialog. If the change log doesn't contain more
+     * releases, the reader is closed and the document doesn't contain the paging script.
+     * </p>
+     */
+    String renderFirstPage() {
+        List<ReleaseItem> releases = readPage();
+        boolean last = releases.size() < mPageSize;
+        if (last) {
+            close();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            mRenderer.render(sb, releases, last ? null : SCRIPT);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw IOException
+            throw new RuntimeException(e);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Display the document returned by {@link #renderFirstPage()} in {@code webView} and load the
+     * following pages on demand.
+     */
+    void attach(WebView webView, String firstPage) {
+        mWebView = webView;
+        if (!mClosed) {
+            webView.getSettings().setJavaScriptEnabled(true);
+            webView.setWebViewClient(this);
+        }
+        webView.loadDataWithBaseURL(null, firstPage, "text/html", "UTF-8", null);
+    }
+
+    /**
+     * Stop loading pages and don't touch the {@code WebView} anymore.
+     *
+     * <p>
+     * This is called when the dialog is dismissed.
+     * </p>
+     */
+    void detach() {
+        mDetached = true;
+        close();
+    }
+
+    /**
+     * Stop loading pages and close the reader.
+     */
+    void close() {
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+
+        // Closing the reader on the executor makes sure it's not used at the same time
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mReader.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean shouldOverrideUrlLoading(WebView view, String url) {
+        if (MORE_URL.equals(url)) {
+            loadNextPage();
+            return true;
+        }
+
+        // Open links in the browser like a WebView without WebViewClient does
+        try {
+            view.getContext().startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
+        } catch (ActivityNotFoundException e) {
+            Log.w(ChangeLog.LOG_TAG, "Can't open " + url, e);
+        }
+        return true;
+    }
+
+    private void loadNextPage() {
+        if (mLoading || mClosed) {
+            return;
+        }
+
+        mLoading = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mClosed) {
+                    return;
+                }
+
+                List<ReleaseItem> releases = readPage();
+                final boolean last = releases.size() < mPageSize;
+                if (last) {
+                    close();
+                }
+
+                StringBuilder sb = new StringBuilder();
+                try {
+                    mRenderer.renderReleases(sb, releases);
+                } catch (IOException e) {
+                    // StringBuilder doesn't throw IOException
+                    throw new RuntimeException(e);
+                }
+
+                final String script = "window.ckChangeLogAppend(" +
+                        toJavaScriptString(sb) + ", " + last + ");";
+                mWebView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoading = false;
+
+                        // The WebView might have been returned to a WebViewPool in the meantime
+                        if (!mDetached) {
+                            evaluateJavascript(mWebView, script);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private List<ReleaseItem> readPage() {
+        List<ReleaseItem> releases = new ArrayList<ReleaseItem>(mPageSize);
+        try {
+            ReleaseItem release;
+            while (releases.size() < mPageSize && (release = mReader.next()) != null) {
+                releases.add(release);
+            }
+        } catch (IOException e) {
+            Log.e(ChangeLog.LOG_TAG, e.getMessage(), e);
+
+            // Don't try to read any further
+            close();
+        }
+
+        return releases;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void evaluateJavascript(WebView webView, String script) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            webView.evaluateJavascript(script, null);
+        } else {
+            webView.loadUrl("javascript:" + script);
+        }
+    }
+
+    /**
+     * Create a JavaScript string literal.
+     *
+     * <p>
+     * Besides quotes and (JavaScript) line terminators this also escapes {@code %}, because older
+     * {@code WebView}s decode {@code javascript:} URLs before running them.
+     * </p>
+     */
+    private static String toJavaScriptString(CharSequence value) {
+        int length = value.length();
+        StringBuilder sb = new StringBuilder(length + 16);
+        sb.append('\'');
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '\'' || c == '\\' || c == '%' || c == '\u2028' ||
+                    c == '\u2029') {
+                sb.append("\\u");
+                String hex = Integer.toHexString(c);
+                for (int j = hex.length(); j < 4; j++) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('\'');
+
+        return sb.toString();
+    }
+}
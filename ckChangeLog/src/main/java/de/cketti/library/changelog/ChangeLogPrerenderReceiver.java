@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+
+
+/**
+ * Pre-renders the change log right after the app was updated.
+ *
+ * <p>
+ * Subclasses create the {@link ChangeLog} instance used to render the change log. It has to
+ * enable the {@link HtmlCache}, see {@link ChangeLogPrerenderer}. Add the subclass to your
+ * {@code AndroidManifest.xml}:
+ * </p>
+ * <pre>
+ * &lt;receiver android:name=".MyChangeLogPrerenderReceiver"&gt;
+ *     &lt;intent-filter&gt;
+ *         &lt;action android:name="android.intent.action.MY_PACKAGE_REPLACED" /&gt;
+ *     &lt;/intent-filter&gt;
+ *     &lt;!-- Android versions before 3.1 --&gt;
+ *     &lt;intent-filter&gt;
+ *         &lt;action android:name="android.intent.action.PACKAGE_REPLACED" /&gt;
+ *         &lt;data android:scheme="package" /&gt;
+ *     &lt;/intent-filter&gt;
+ * &lt;/receiver&gt;
+ * </pre>
+ */
+public abstract class ChangeLogPrerenderReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!isOwnPackageReplaced(context, intent)) {
+            return;
+        }
+
+        final Context appContext = context.getApplicationContext();
+
+        // Keep the process alive until the work is done (Android 3.0+)
+        final PendingResult pendingResult =
+                (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) ? goAsync() : null;
+
+        ChangeLogPrerenderer.prerenderAsync(
+                new ChangeLogLoader.Factory() {
+                    @Override
+                    public ChangeLog create() {
+                        return createChangeLog(appContext);
+                    }
+                },
+                ChangeLogLoader.getDefaultExecutor(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (pendingResult != null) {
+                            pendingResult.finish();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Create the {@link ChangeLog} instance used to render the change log.
+     *
+     * <p>
+     * This is called on a background thread. Return an instance of the class (with the same CSS
+     * styles) your app uses to display the change log. Otherwise the pre-rendered change log is
+     * stored under a different cache key and won't be used.
+     * </p>
+     *
+     * @param context
+     *         The application context.
+     */
+    protected abstract ChangeLog createChangeLog(Context context);
+
+    private static boolean isOwnPackageReplaced(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return true;
+        }
+
+        if (Intent.ACTION_PACKAGE_REPLACED.equals(action)) {
+            Uri data = intent.getData();
+            return data != null && context.getPackageName().equals(data.getSchemeSpecificPart());
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+
+/**
+ * Renders the change log ahead of time, so the "What's New" dialog can be displayed right away.
+ *
+ * <p>
+ * The rendered change logs are stored in the {@link HtmlCache} returned by
+ * {@link ChangeLog#getHtmlCache()}. So this only has an effect for {@code ChangeLog} subclasses
+ * that enable the cache and don't display the change log in a {@code ListView}.
+ * </p>
+ *
+ * <p>
+ * Call {@link #prerenderAsync(ChangeLogLoader.Factory)} from {@code Application.onCreate()} or use
+ * {@link ChangeLogPrerenderReceiver} to do the work right after the app was updated.
+ * </p>
+ */
+public final class ChangeLogPrerenderer {
+    private ChangeLogPrerenderer() {
+    }
+
+    /**
+     * Render the change logs displayed by {@link ChangeLog#getLogDialog()} and
+     * {@link ChangeLog#getFullLogDialog()} and store them in the cache.
+     *
+     * <p>
+     * This blocks until the work is done. Don't call it on the main thread.
+     * </p>
+     */
+    public static void prerender(ChangeLog changeLog) {
+        if (changeLog.getHtmlCache() == null) {
+            Log.w(ChangeLog.LOG_TAG, "Not pre-rendering change log because " +
+                    changeLog.getClass().getName() + " doesn't use an HtmlCache");
+            return;
+        }
+
+        if (changeLog.isListViewEnabled()) {
+            // The ListView dialog doesn't use the rendered change log
+            return;
+        }
+
+        // Displayed by getFullLogDialog() and by getLogDialog() on the first run ever
+        changeLog.getLog(true);
+
+        if (!changeLog.isFirstRunEver() && changeLog.hasUnseenChanges()) {
+            changeLog.getLog(false);
+        }
+    }
+
+    /**
+     * Render the change logs in the background and store them in the cache.
+     *
+     * @param factory
+     *         Creates the {@code ChangeLog} instance on a background thread.
+     *
+     * @see #prerender(ChangeLog)
+     */
+    public static void prerenderAsync(ChangeLogLoader.Factory factory) {
+        prerenderAsync(factory, ChangeLogLoader.getDefaultExecutor(), null);
+    }
+
+    /**
+     * Render the change logs in the background and store them in the cache.
+     *
+     * @param onFinished
+     *         Run on the background thread when the work is done. May be {@code null}.
+     */
+    static void prerenderAsync(final ChangeLogLoader.Factory factory, Executor executor,
+            final Runnable onFinished) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prerender(factory.create());
+                } catch (RuntimeException e) {
+                    Log.e(ChangeLog.LOG_TAG, "Error pre-rendering change log", e);
+                } finally {
+                    if (onFinished != null) {
+                        onFinished.run();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * Persisted copy of the merged full change log.
+ *
+ * <p>
+ * A snapshot records the app version it was created for, a fingerprint of the change log
+ * resources and all releases, latest version first. The highest version code it covers is the
+ * version code of its first release.
+ * </p>
+ *
+ * <p>
+ * It also records a fingerprint of the releases it covers (the base fingerprint, see
+ * {@link #computeBaseFingerprint(Resources, int, List, int, int)}). As long as that doesn't
+ * change, only releases newer than the first release have been added to the change log
+ * resources.
+ * </p>
+ *
+ * @see ChangeLog#isSnapshotEnabled()
+ */
+final class ChangeLogSnapshot {
+    private static final int MAGIC = 0x636B534E;
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_NAME_PREFIX = "ckChangeLog-snapshot-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String ENCODING = "UTF-8";
+    private static final int NULL_LENGTH = -1;
+
+
+    private final int mAppVersionCode;
+    private final long mAppUpdateTime;
+    private final long mFingerprint;
+    private final Long mBaseFingerprint;
+    private final ReleaseIndex mReleases;
+
+
+    /**
+     * @param baseFingerprint
+     *         The fingerprint of the releases in {@code releases}. Or {@code null} if it can't be
+     *         computed. Then this snapshot can't be updated incrementally.
+     */
+    ChangeLogSnapshot(int appVersionCode, long appUpdateTime, long fingerprint,
+            Long baseFingerprint, ReleaseIndex releases) {
+        mAppVersionCode = appVersionCode;
+        mAppUpdateTime = appUpdateTime;
+        mFingerprint = fingerprint;
+        mBaseFingerprint = baseFingerprint;
+        mReleases = releases;
+    }
+
+    /**
+     * Get the file a snapshot is stored in.
+     *
+     * @param key
+     *         A key created by {@link HtmlCache#createKey(Object...)}.
+     */
+    static File getFile(Context context, String key) {
+        return new File(context.getCacheDir(), FILE_NAME_PREFIX + key);
+    }
+
+    /**
+     * Compute the fingerprint of the master change log and the localized change logs.
+     *
+     * <p>
+     * This is a checksum of the compiled XML files. Reading the bytes is a lot cheaper than parsing
+     * the files.
+     * </p>
+     *
+     * @param localizedResources
+     *         The {@code Resources} used to resolve {@code localizedResId}, one for each localized
+     *         change log.
+     */
+    static long computeFingerprint(Resources masterResources, int masterResId,
+            List<Resources> localizedResources, int localizedResId) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        updateFingerprint(crc, buffer, masterResources, masterResId);
+        for (Resources resources : localizedResources) {
+            updateFingerprint(crc, buffer, resources, localizedResId);
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Compute the fingerprint of the releases up to a version code in the compiled master change
+     * log and the compiled localized change logs.
+     *
+     * <p>
+     * Only the encoded releases are added to the checksum, see
+     * {@link CompiledChangeLog#updateChecksum(java.util.zip.Checksum, int)}. XML files can't be
+     * split by release without parsing them. So this requires the change logs to be compiled by
+     * {@code changelog-index.gradle}.
+     * </p>
+     *
+     * @param localizedResources
+     *         The {@code Resources} used to resolve {@code localizedResId}, one for each localized
+     *         change log.
+     * @param maxVersionCode
+     *         Only releases with a version code lower than or equal to this are included.
+     *
+     * @return The fingerprint or {@code null} if one of the change logs isn't compiled.
+     */
+    static Long computeBaseFingerprint(Resources masterResources, int masterResId,
+            List<Resources> localizedResources, int localizedResId, int maxVersionCode)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        if (!updateBaseFingerprint(crc, masterResources, masterResId, maxVersionCode)) {
+            return null;
+        }
+        for (Resources resources : localizedResources) {
+            if (!updateBaseFingerprint(crc, resources, localizedResId, maxVersionCode)) {
+                return null;
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    private static boolean updateBaseFingerprint(CRC32 crc, Resources resources, int resId,
+            int maxVersionCode) throws IOException {
+        InputStream in;
+        try {
+            in = resources.openRawResource(resId);
+        } catch (Resources.NotFoundException e) {
+            return false;
+        }
+
+        try {
+            CompiledChangeLog compiledChangeLog = CompiledChangeLog.read(in);
+            if (compiledChangeLog == null) {
+                return false;
+            }
+
+            compiledChangeLog.updateChecksum(crc, maxVersionCode);
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void updateFingerprint(CRC32 crc, byte[] buffer, Resources resources,
+            int resId) throws IOException {
+        InputStream in;
+        try {
+            in = resources.openRawResource(resId);
+        } catch (Resources.NotFoundException e) {
+            // Make sure a missing resource changes the fingerprint
+            crc.update(0xFF);
+            return;
+        }
+
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param factory
+     *         Used to create the releases of the snapshot.
+     *
+     * @return The snapshot or {@code null} if the file doesn't exist or couldn't be read.
+     */
+    static ChangeLogSnapshot read(File file, Release.Factory<ReleaseItem> factory) {
+        return read(file, factory, ReleaseReader.ALL_VERSIONS);
+    }
+
+    /**
+     * Read a snapshot, stopping at the first release that isn't needed.
+     *
+     * <p>
+     * Releases are stored latest version first. So older releases don't have to be read to get
+     * the changes since the last version. A snapshot read this way must not be written.
+     * </p>
+     *
+     * @param factory
+     *         Used to create the releases of the snapshot.
+     * @param newerThan
+     *         Only releases with a version code higher than this are read.
+     *         {@link ReleaseReader#ALL_VERSIONS} reads all releases.
+     *
+     * @return The snapshot or {@code null} if the file doesn't exist or couldn't be read.
+     */
+    static ChangeLogSnapshot read(File file, Release.Factory<ReleaseItem> factory,
+            int newerThan) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            int appVersionCode = in.readInt();
+            long appUpdateTime = in.readLong();
+            long fingerprint = in.readLong();
+            Long baseFingerprint = in.readBoolean() ? in.readLong() : null;
+
+            int releaseCount = in.readInt();
+            List<ReleaseItem> releases = (newerThan == ReleaseReader.ALL_VERSIONS) ?
+                    new ArrayList<ReleaseItem>(releaseCount) : new ArrayList<ReleaseItem>();
+            for (int i = 0; i < releaseCount; i++) {
+                int versionCode = in.readInt();
+                if (versionCode <= newerThan) {
+                    break;
+                }
+
+                String versionName = readString(in);
+
+                int changeCount = in.readInt();
+                List<String> changes = new ArrayList<String>(changeCount);
+                for (int j = 0; j < changeCount; j++) {
+                    changes.add(readString(in));
+                }
+
+                releases.add(factory.createRelease(versionCode, versionName, changes));
+            }
+
+            return new ChangeLogSnapshot(appVersionCode, appUpdateTime, fingerprint,
+                    baseFingerprint, ReleaseIndex.fromList(releases));
+        } catch (IOException e) {
+            Log.w(ChangeLog.LOG_TAG, "Error reading change log snapshot", e);
+            return null;
+        } catch (RuntimeException e) {
+            // Corrupt file, e.g. negative counts or releases in the wrong order
+            Log.w(ChangeLog.LOG_TAG, "Invalid change log snapshot", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Write this snapshot.
+     *
+     * <p>
+     * The data is written to a temporary file first and then renamed, so readers never see a
+     * partially written snapshot.
+     * </p>
+     */
+    void write(File file) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), TEMP_FILE_SUFFIX,
+                    file.getParentFile());
+
+            FileOutputStream fileOut = new FileOutputStream(tempFile);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            try {
+                writeTo(out);
+                out.flush();
+
+                // Make sure the data is on disk before the file is renamed
+                fileOut.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            Log.w(ChangeLog.LOG_TAG, "Error writing change log snapshot", e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(mAppVersionCode);
+        out.writeLong(mAppUpdateTime);
+        out.writeLong(mFingerprint);
+        out.writeBoolean(mBaseFingerprint != null);
+        if (mBaseFingerprint != null) {
+            out.writeLong(mBaseFingerprint);
+        }
+
+        int releaseCount = mReleases.size();
+        out.writeInt(releaseCount);
+        for (int i = 0; i < releaseCount; i++) {
+            ReleaseItem release = mReleases.get(i);
+            out.writeInt(release.versionCode);
+            writeString(out, release.versionName);
+
+            List<String> changes = release.changes;
+            int changeCount = changes.size();
+            out.writeInt(changeCount);
+            for (int j = 0; j < changeCount; j++) {
+                writeString(out, changes.get(j));
+            }
+        }
+    }
+
+    /**
+     * Check whether this snapshot was created for the installed app version.
+     *
+     * <p>
+     * Change log resources can only change when the app is updated. So in that case the snapshot
+     * is up to date without looking at the resources.
+     * </p>
+     */
+    boolean isCreatedFor(int appVersionCode, long appUpdateTime) {
+        return mAppVersionCode == appVersionCode && mAppUpdateTime == appUpdateTime;
+    }
+
+    long getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * Get the fingerprint of the releases in this snapshot.
+     *
+     * @return The fingerprint or {@code null} if it wasn't recorded.
+     */
+    Long getBaseFingerprint() {
+        return mBaseFingerprint;
+    }
+
+    ReleaseIndex getReleases() {
+        return mReleases;
+    }
+
+    // Strings are written as length-prefixed UTF-8 so they're not limited to 64 KiB like writeUTF()
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+
+        byte[] data = value.getBytes(ENCODING);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, ENCODING);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.content.Context;
+import android.util.Log;
+
+
+/**
+ * On-disk cache for rendered change logs.
+ *
+ * <p>
+ * Entries are stored as individual files in a cache directory. They are written to a temporary
+ * file first and then renamed, so readers never see partially written entries. When the total
+ * size of all entries exceeds the configured maximum, the least recently used entries are
+ * deleted.
+ * </p>
+ *
+ * @see ChangeLog#getHtmlCache()
+ */
+public final class HtmlCache {
+    /**
+     * Default maximum size of the cache returned by {@link #getInstance(Context)}.
+     */
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    private static final String DIRECTORY_NAME = "ckChangeLog";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String ENCODING = "UTF-8";
+
+    private static HtmlCache sInstance;
+
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+
+    /**
+     * Get the default {@code HtmlCache} instance.
+     *
+     * <p>
+     * It stores its entries in a subdirectory of the app's cache directory.
+     * </p>
+     */
+    public static synchronized HtmlCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    DIRECTORY_NAME);
+            sInstance = new HtmlCache(directory, DEFAULT_MAX_SIZE);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Create an {@code HtmlCache} instance.
+     *
+     * <p>
+     * Only one instance should be used per directory.
+     * </p>
+     *
+     * @param directory
+     *         The directory the cache entries are stored in. It is created if necessary.
+     * @param maxSize
+     *         The maximum size of all entries in bytes.
+     */
+    public HtmlCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Create a cache key from the values a rendered change log depends on.
+     *
+     * @return A hash of {@code values} that can be used as file name.
+     */
+    public static String createKey(Object... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Object value : values) {
+                digest.update(String.valueOf(value).getBytes(ENCODING));
+                // Separator, so ("ab", "c") and ("a", "bc") produce different keys
+                digest.update((byte) 0);
+            }
+
+            byte[] hash = digest.digest();
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get a cache entry.
+     *
+     * @param key
+     *         The key created by {@link #createKey(Object...)}.
+     *
+     * @return The cached change log or {@code null} if there's no entry for {@code key}.
+     */
+    public synchronized String get(String key) {
+        File file = new File(mDirectory, key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            String value = readFile(file);
+
+            // Remember when the entry was last used
+            file.setLastModified(System.currentTimeMillis());
+
+            return value;
+        } catch (IOException e) {
+            Log.w(ChangeLog.LOG_TAG, "Error reading cached change log", e);
+            return null;
+        }
+    }
+
+    /**
+     * Add an entry to the cache.
+     *
+     * @param key
+     *         The key created by {@link #createKey(Object...)}.
+     * @param value
+     *         The rendered change log.
+     */
+    public synchronized void put(String key, String value) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(ChangeLog.LOG_TAG, "Could not create cache directory " + mDirectory);
+            return;
+        }
+
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(key, TEMP_FILE_SUFFIX, mDirectory);
+            writeFile(tempFile, value);
+
+            if (!tempFile.renameTo(new File(mDirectory, key))) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            Log.w(ChangeLog.LOG_TAG, "Error writing change log to cache", e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Delete all cache entries.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+
+        if (size <= mMaxSize) {
+            return;
+        }
+
+        // Delete least recently used entries first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsLastModified = lhs.lastModified();
+                long rhsLastModified = rhs.lastModified();
+                return (lhsLastModified < rhsLastModified) ? -1 :
+                        ((lhsLastModified == rhsLastModified) ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && size > mMaxSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int length = 0;
+            int read;
+            while (length < data.length &&
+                    (read = in.read(data, length, data.length - length)) != -1) {
+                length += read;
+            }
+
+            return new String(data, 0, length, ENCODING);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFile(File file, String value) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(value.getBytes(ENCODING));
+
+            // Make sure the data is on disk before the file is renamed
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+
+/**
+ * Remembers the version code of the latest release in the change log across app launches.
+ *
+ * <p>
+ * Change log resources can only change when the app is updated. So the value is stored together
+ * with the app's version code and the time it was last updated, and is discarded when either of
+ * them changes.
+ * </p>
+ *
+ * @see ChangeLog#getLatestVersionCode()
+ */
+final class LatestVersionCache {
+    private static final String PREFERENCES_NAME = "ckChangeLog";
+    private static final String KEY_LATEST_VERSION_CODE = "latest_version_code";
+    private static final String KEY_APP_VERSION_CODE = "app_version_code";
+    private static final String KEY_APP_UPDATE_TIME = "app_update_time";
+
+
+    private LatestVersionCache() {
+    }
+
+    /**
+     * Get the stored version code of the latest release.
+     *
+     * @return The version code or {@code null} if no value was stored for this app version.
+     */
+    static Integer get(Context context, int appVersionCode, long appUpdateTime) {
+        SharedPreferences preferences = getPreferences(context);
+        if (!preferences.contains(KEY_LATEST_VERSION_CODE) ||
+                preferences.getInt(KEY_APP_VERSION_CODE, ChangeLog.NO_VERSION) != appVersionCode ||
+                preferences.getLong(KEY_APP_UPDATE_TIME, 0) != appUpdateTime) {
+            return null;
+        }
+
+        return preferences.getInt(KEY_LATEST_VERSION_CODE, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Store the version code of the latest release.
+     */
+    static void put(Context context, int appVersionCode, long appUpdateTime,
+            int latestVersionCode) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.putInt(KEY_LATEST_VERSION_CODE, latestVersionCode);
+        editor.putInt(KEY_APP_VERSION_CODE, appVersionCode);
+        editor.putLong(KEY_APP_UPDATE_TIME, appUpdateTime);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            editor.apply();
+        } else {
+            editor.commit();
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+
+/**
+ * {@link VersionStore} that keeps the last version code in a {@link SharedPreferences} instance.
+ *
+ * <p>
+ * Values are written on a background thread. When {@link #setLastVersionCode(int)} is called again
+ * before the previous value was written, only the latest value is written. All instances in a
+ * process using the same {@code SharedPreferences} instance share the pending value, so the last
+ * call to {@link #setLastVersionCode(int)} always wins.
+ * </p>
+ */
+public class PreferencesVersionStore implements VersionStore {
+    /**
+     * Guards {@link #sPendingWrites}.
+     */
+    private static final Object sLock = new Object();
+
+    /**
+     * Held while writing to a {@code SharedPreferences} instance, so writes are never reordered.
+     */
+    private static final Object sWriteLock = new Object();
+
+    /**
+     * Version codes that haven't been written yet, by {@code SharedPreferences} instance.
+     */
+    private static final Map<SharedPreferences, Integer> sPendingWrites =
+            new IdentityHashMap<SharedPreferences, Integer>();
+
+    private static ExecutorService sWriteExecutor;
+
+
+    private final SharedPreferences mPreferences;
+
+
+    /**
+     * Create a {@code PreferencesVersionStore} instance.
+     *
+     * @param preferences
+     *         {@code SharedPreferences} instance that is used to persist the last version code.
+     */
+    public PreferencesVersionStore(SharedPreferences preferences) {
+        if (preferences == null) {
+            throw new IllegalArgumentException("Argument 'preferences' must not be null");
+        }
+
+        mPreferences = preferences;
+    }
+
+    @Override
+    public int getLastVersionCode() {
+        synchronized (sLock) {
+            Integer pendingVersionCode = sPendingWrites.get(mPreferences);
+            if (pendingVersionCode != null) {
+                return pendingVersionCode;
+            }
+        }
+
+        return mPreferences.getInt(ChangeLog.VERSION_KEY, ChangeLog.NO_VERSION);
+    }
+
+    @Override
+    public void setLastVersionCode(int versionCode) {
+        synchronized (sLock) {
+            boolean writeScheduled = sPendingWrites.containsKey(mPreferences);
+            sPendingWrites.put(mPreferences, versionCode);
+            if (writeScheduled) {
+                // The scheduled write will pick up the new value
+                return;
+            }
+        }
+
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                writePendingVersionCode(mPreferences);
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        writePendingVersionCode(mPreferences);
+    }
+
+    private static void writePendingVersionCode(SharedPreferences preferences) {
+        synchronized (sWriteLock) {
+            while (true) {
+                Integer versionCode;
+                synchronized (sLock) {
+                    versionCode = sPendingWrites.get(preferences);
+                }
+
+                if (versionCode == null) {
+                    return;
+                }
+
+                // SharedPreferences.Editor.apply() is not available on all supported Android
+                // versions
+                SharedPreferences.Editor editor = preferences.edit();
+                editor.putInt(ChangeLog.VERSION_KEY, versionCode);
+                if (!editor.commit()) {
+                    Log.e(ChangeLog.LOG_TAG, "Could not write last version code");
+                }
+
+                synchronized (sLock) {
+                    // Only remove the entry if no newer value was set while we were writing.
+                    // Otherwise write the newer value, too.
+                    if (versionCode.equals(sPendingWrites.get(preferences))) {
+                        sPendingWrites.remove(preferences);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static synchronized Executor getWriteExecutor() {
+        if (sWriteExecutor == null) {
+            sWriteExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ckChangeLog-VersionStore");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return sWriteExecutor;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+
+/**
+ * {@link ChangeLogSource} reading a change log XML file from the app's raw resources.
+ *
+ * <p>
+ * Unlike {@code res/xml/} files, raw resources are not compiled to binary XML. So they can be
+ * read by the {@link ChangeLogScanner}, which is a lot faster than parsing compiled XML. Raw
+ * resources that are stored uncompressed in the APK are memory-mapped, e.g. files ending in
+ * {@code .gz}. Others are streamed.
+ * </p>
+ *
+ * @see ChangeLog#readChangeLogFromSource(ChangeLogSource, boolean)
+ * @see ChangeLog#scanChangeLogFromSource(ChangeLogSource, boolean)
+ */
+public final class RawResourceChangeLogSource extends ChangeLogSource {
+    private final Resources mResources;
+    private final int mResId;
+
+
+    /**
+     * Create a {@code RawResourceChangeLogSource} instance.
+     *
+     * @param resId
+     *         The ID of the raw resource, e.g. {@code R.raw.changelog}.
+     */
+    public RawResourceChangeLogSource(Context context, int resId) {
+        mResources = context.getResources();
+        mResId = resId;
+    }
+
+    @Override
+    protected InputStream openStream() throws IOException {
+        AssetFileDescriptor fd;
+        try {
+            fd = mResources.openRawResourceFd(mResId);
+        } catch (Resources.NotFoundException e) {
+            // Thrown for compressed resources. Those can't be opened as file descriptor.
+            fd = null;
+        }
+
+        if (fd == null) {
+            try {
+                return mResources.openRawResource(mResId);
+            } catch (Resources.NotFoundException e) {
+                IOException exception = new IOException(e.getMessage());
+                exception.initCause(e);
+                throw exception;
+            }
+        }
+
+        try {
+            FileInputStream in = fd.createInputStream();
+            return map(in.getChannel(), fd.getStartOffset(), fd.getLength());
+        } finally {
+            // The mapping stays valid after the file descriptor has been closed
+            fd.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "raw:" + mResId;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import android.util.SparseArray;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * Immutable collection of releases sorted by version code, latest version first.
+ *
+ * <p>
+ * Version codes are kept in an {@code int} array next to the array of releases. Lookups by
+ * version code are binary searches and iterating doesn't require boxing or sorting.
+ * </p>
+ *
+ * @see ChangeLog#getReleaseIndex(boolean)
+ */
+public final class ReleaseIndex {
+    private static final ReleaseIndex EMPTY = new ReleaseIndex(new int[0], new ReleaseItem[0]);
+
+
+    private final int[] mVersionCodes;
+    private final ReleaseItem[] mReleases;
+
+
+    private ReleaseIndex(int[] versionCodes, ReleaseItem[] releases) {
+        mVersionCodes = versionCodes;
+        mReleases = releases;
+    }
+
+    /**
+     * Create a {@code ReleaseIndex} from a {@code SparseArray} mapping version codes to releases.
+     */
+    public static ReleaseIndex fromSparseArray(SparseArray<ReleaseItem> releases) {
+        int size = releases.size();
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        // Keys of a SparseArray are sorted in ascending order
+        int[] versionCodes = new int[size];
+        ReleaseItem[] items = new ReleaseItem[size];
+        for (int i = 0, j = size - 1; i < size; i++, j--) {
+            versionCodes[i] = releases.keyAt(j);
+            items[i] = releases.valueAt(j);
+        }
+
+        return new ReleaseIndex(versionCodes, items);
+    }
+
+    /**
+     * Create a {@code ReleaseIndex} from a list of releases sorted by version code, latest version
+     * first.
+     *
+     * @throws IllegalArgumentException
+     *         If the releases are not sorted or contain duplicate version codes.
+     */
+    static ReleaseIndex fromList(List<ReleaseItem> releases) {
+        int size = releases.size();
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        int[] versionCodes = new int[size];
+        ReleaseItem[] items = new ReleaseItem[size];
+        for (int i = 0; i < size; i++) {
+            ReleaseItem release = releases.get(i);
+            if (i > 0 && release.versionCode >= versionCodes[i - 1]) {
+                throw new IllegalArgumentException("Releases not sorted by version code");
+            }
+            versionCodes[i] = release.versionCode;
+            items[i] = release;
+        }
+
+        return new ReleaseIndex(versionCodes, items);
+    }
+
+    /**
+     * Merge the master change log with one or more localized change logs.
+     *
+     * <p>
+     * The result contains all releases of {@code master}. The release information from the first
+     * of the {@code localized} indexes containing a release is used where available. This is done
+     * in a single pass over all indexes.
+     * </p>
+     *
+     * @param localized
+     *         The localized change logs, in order of preference.
+     */
+    public static ReleaseIndex merge(ReleaseIndex master, ReleaseIndex... localized) {
+        int count = localized.length;
+        int[][] localizedVersionCodes = new int[count][];
+        ReleaseItem[][] localizedReleases = new ReleaseItem[count][];
+        for (int k = 0; k < count; k++) {
+            localizedVersionCodes[k] = localized[k].mVersionCodes;
+            localizedReleases[k] = localized[k].mReleases;
+        }
+
+        ReleaseItem[] releases = ReleaseMerger.merge(master.mVersionCodes, master.mReleases,
+                localizedVersionCodes, localizedReleases);
+        if (releases == master.mReleases) {
+            return master;
+        }
+
+        // The version codes are the same as in 'master' and the array is never modified
+        return new ReleaseIndex(master.mVersionCodes, releases);
+    }
+
+    /**
+     * Get the number of releases.
+     */
+    public int size() {
+        return mVersionCodes.length;
+    }
+
+    /**
+     * Get the version code of the release at position {@code index}.
+     */
+    public int getVersionCode(int index) {
+        return mVersionCodes[index];
+    }
+
+    /**
+     * Get the release at position {@code index}.
+     */
+    public ReleaseItem get(int index) {
+        return mReleases[index];
+    }
+
+    /**
+     * Get the position of the release with the given version code.
+     *
+     * @return The position of the release or {@code -1} if there's no such release.
+     */
+    public int indexOf(int versionCode) {
+        int index = countNewerThan(versionCode);
+        return (index < mVersionCodes.length && mVersionCodes[index] == versionCode) ? index : -1;
+    }
+
+    /**
+     * Get the release with the given version code.
+     *
+     * @return The release or {@code null} if there's no such release.
+     */
+    public ReleaseItem findByVersionCode(int versionCode) {
+        int index = indexOf(versionCode);
+        return (index != -1) ? mReleases[index] : null;
+    }
+
+    /**
+     * Get the number of releases with a version code higher than {@code versionCode}.
+     *
+     * <p>
+     * Those are the releases at positions {@code 0} to {@code countNewerThan(versionCode) - 1}.
+     * </p>
+     */
+    public int countNewerThan(int versionCode) {
+        int low = 0;
+        int high = mVersionCodes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mVersionCodes[mid] > versionCode) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Get the releases with a version code higher than {@code versionCode}.
+     */
+    public ReleaseIndex newerThan(int versionCode) {
+        int count = countNewerThan(versionCode);
+        if (count == mVersionCodes.length) {
+            return this;
+        }
+
+        int[] versionCodes = new int[count];
+        ReleaseItem[] releases = new ReleaseItem[count];
+        System.arraycopy(mVersionCodes, 0, versionCodes, 0, count);
+        System.arraycopy(mReleases, 0, releases, 0, count);
+
+        return new ReleaseIndex(versionCodes, releases);
+    }
+
+    /**
+     * Create a reader returning the releases of this index, latest version first.
+     *
+     * @param newerThan
+     *         Only releases with a version code higher than this are returned.
+     *         {@link ReleaseReader#ALL_VERSIONS} returns all releases.
+     * @param maxVersionCode
+     *         Only releases with a version code lower than or equal to this are returned.
+     */
+    ReleaseReader<ReleaseItem> newReader(int newerThan, int maxVersionCode) {
+        final int start = (maxVersionCode == Integer.MAX_VALUE) ?
+                0 : countNewerThan(maxVersionCode);
+        final int end = (newerThan == ReleaseReader.ALL_VERSIONS) ?
+                mReleases.length : countNewerThan(newerThan);
+
+        return new ReleaseReader<ReleaseItem>() {
+            private int mIndex = start;
+
+            @Override
+            public ReleaseItem next() {
+                return (mIndex < end) ? mReleases[mIndex++] : null;
+            }
+
+            @Override
+            public void close() {
+                // Do nothing
+            }
+        };
+    }
+
+    /**
+     * Get a read-only {@code List} view of the releases, latest version first.
+     */
+    public List<ReleaseItem> asList() {
+        return new ReleaseList();
+    }
+
+
+    private final class ReleaseList extends AbstractList<ReleaseItem> implements RandomAccess {
+        @Override
+        public ReleaseItem get(int location) {
+            return mReleases[location];
+        }
+
+        @Override
+        public int size() {
+            return mReleases.length;
+        }
+    }
+}
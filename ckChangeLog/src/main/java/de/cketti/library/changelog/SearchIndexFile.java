@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.content.Context;
+import android.util.Log;
+
+
+/**
+ * Persisted {@link SearchIndex} of the full change log.
+ *
+ * <p>
+ * The file is stored next to the {@link ChangeLogSnapshot} and records the app version the index
+ * was created for.
+ * </p>
+ *
+ * @see ChangeLog#getSearchIndex()
+ */
+final class SearchIndexFile {
+    private static final int MAGIC = 0x636B5346;
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_NAME_PREFIX = "ckChangeLog-search-";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+
+    private final int mAppVersionCode;
+    private final long mAppUpdateTime;
+    private final SearchIndex mSearchIndex;
+
+
+    SearchIndexFile(int appVersionCode, long appUpdateTime, SearchIndex searchIndex) {
+        mAppVersionCode = appVersionCode;
+        mAppUpdateTime = appUpdateTime;
+        mSearchIndex = searchIndex;
+    }
+
+    /**
+     * Get the file a search index is stored in.
+     *
+     * @param key
+     *         A key created by {@link HtmlCache#createKey(Object...)}.
+     */
+    static File getFile(Context context, String key) {
+        return new File(context.getCacheDir(), FILE_NAME_PREFIX + key);
+    }
+
+    /**
+     * Read a persisted search index.
+     *
+     * @return The search index or {@code null} if the file doesn't exist or couldn't be read.
+     */
+    static SearchIndexFile read(File file) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            int appVersionCode = in.readInt();
+            long appUpdateTime = in.readLong();
+            SearchIndex searchIndex = SearchIndex.readFrom(in);
+
+            return new SearchIndexFile(appVersionCode, appUpdateTime, searchIndex);
+        } catch (IOException e) {
+            Log.w(ChangeLog.LOG_TAG, "Error reading search index", e);
+            return null;
+        } catch (RuntimeException e) {
+            // Corrupt file, e.g. huge counts
+            Log.w(ChangeLog.LOG_TAG, "Invalid search index", e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            Log.w(ChangeLog.LOG_TAG, "Invalid search index", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Write this search index.
+     *
+     * <p>
+     * The data is written to a temporary file first and then renamed, so readers never see a
+     * partially written index.
+     * </p>
+     */
+    void write(File file) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), TEMP_FILE_SUFFIX,
+                    file.getParentFile());
+
+            FileOutputStream fileOut = new FileOutputStream(tempFile);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(mAppVersionCode);
+                out.writeLong(mAppUpdateTime);
+                mSearchIndex.writeTo(out);
+                out.flush();
+
+                fileOut.getFD().sync();
+            } finally {
+                out.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            Log.w(ChangeLog.LOG_TAG, "Error writing search index", e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Check whether this search index was created for the installed app version.
+     *
+     * @see ChangeLogSnapshot#isCreatedFor(int, long)
+     */
+    boolean isCreatedFor(int appVersionCode, long appUpdateTime) {
+        return mAppVersionCode == appVersionCode && mAppUpdateTime == appUpdateTime;
+    }
+
+    SearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+}
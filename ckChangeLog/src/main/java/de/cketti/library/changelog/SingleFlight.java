@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Collapses concurrent computations of the same value into one.
+ *
+ * <p>
+ * The first thread calling {@link #execute(String, Callable)} with a key runs the computation.
+ * Threads calling it with the same key while the computation is in flight wait for it and receive
+ * the same result. Results are not cached. Once the computation has finished the next call with
+ * that key computes the value again.
+ * </p>
+ *
+ * @param <V>
+ *         The type of the computed values.
+ */
+final class SingleFlight<V> {
+    private final Map<String, Flight<V>> mFlights = new HashMap<String, Flight<V>>();
+
+
+    /**
+     * Compute a value or wait for the in-flight computation with the same key.
+     *
+     * @param key
+     *         Identifies the computed value. Computations with equal keys must return equivalent
+     *         values.
+     * @param callable
+     *         Computes the value. Exceptions are rethrown to all callers waiting for the value.
+     *         Checked exceptions are wrapped in a {@code RuntimeException}.
+     */
+    V execute(String key, Callable<V> callable) {
+        Thread currentThread = Thread.currentThread();
+
+        Flight<V> flight;
+        boolean owner = false;
+        synchronized (mFlights) {
+            flight = mFlights.get(key);
+            if (flight == null) {
+                flight = new Flight<V>(callable, currentThread);
+                mFlights.put(key, flight);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            try {
+                flight.run();
+            } finally {
+                synchronized (mFlights) {
+                    mFlights.remove(key);
+                }
+            }
+        } else if (flight.mOwner == currentThread) {
+            // Waiting for our own computation would never return
+            return call(callable);
+        }
+
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return call(callable);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static <V> V call(Callable<V> callable) {
+        try {
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private static final class Flight<V> extends FutureTask<V> {
+        final Thread mOwner;
+
+        Flight(Callable<V> callable, Thread owner) {
+            super(callable);
+            mOwner = owner;
+        }
+    }
+}
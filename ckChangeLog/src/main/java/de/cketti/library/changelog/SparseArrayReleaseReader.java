@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import android.util.SparseArray;
+
+import de.cketti.library.changelog.ChangeLog.ReleaseItem;
+
+
+/**
+ * {@link ReleaseReader} returning the contents of a {@code SparseArray}, latest version first.
+ */
+final class SparseArrayReleaseReader implements ReleaseReader<ReleaseItem> {
+    private final SparseArray<ReleaseItem> mReleases;
+    private int mIndex;
+
+
+    SparseArrayReleaseReader(SparseArray<ReleaseItem> releases, int maxVersionCode) {
+        mReleases = releases;
+
+        int index = releases.size();
+        while (index > 0 && releases.keyAt(index - 1) > maxVersionCode) {
+            index--;
+        }
+        mIndex = index;
+    }
+
+    @Override
+    public ReleaseItem next() {
+        return (mIndex > 0) ? mReleases.valueAt(--mIndex) : null;
+    }
+
+    @Override
+    public void close() {
+        // Do nothing
+    }
+}
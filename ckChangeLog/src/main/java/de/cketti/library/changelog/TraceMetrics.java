@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+
+/**
+ * {@link ChangeLogMetrics} that marks the phases of displaying a change log as
+ * {@code android.os.Trace} sections, so they show up in systrace.
+ *
+ * <p>
+ * Requires Android 4.3 (API 18). Does nothing on older versions.
+ * </p>
+ *
+ * <pre>
+ * ChangeLogMetrics.setInstance(new TraceMetrics());
+ * </pre>
+ */
+public class TraceMetrics extends ChangeLogMetrics {
+    private static final boolean TRACE_AVAILABLE =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+
+    /**
+     * Section names, indexed by {@link Phase#ordinal()}. Created once to avoid allocations.
+     */
+    private final String[] mSectionNames;
+
+
+    public TraceMetrics() {
+        Phase[] phases = Phase.values();
+        mSectionNames = new String[phases.length];
+        for (Phase phase : phases) {
+            mSectionNames[phase.ordinal()] = "ckChangeLog:" + phase.name();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    @Override
+    public void onPhaseStarted(Phase phase) {
+        if (TRACE_AVAILABLE) {
+            Trace.beginSection(mSectionNames[phase.ordinal()]);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    @Override
+    public void onPhaseFinished(Phase phase, long durationNanos) {
+        if (TRACE_AVAILABLE) {
+            Trace.endSection();
+        }
+    }
+}
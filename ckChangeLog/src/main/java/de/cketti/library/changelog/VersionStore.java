@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+
+/**
+ * Persists the version code of the app version whose change log was last seen by the user.
+ *
+ * @see PreferencesVersionStore
+ */
+public interface VersionStore {
+    /**
+     * Get the version code stored by the last call to {@link #setLastVersionCode(int)}.
+     *
+     * @return The last version code or {@code -1} if none was stored yet.
+     */
+    int getLastVersionCode();
+
+    /**
+     * Store the version code of the app version whose change log was last seen by the user.
+     *
+     * <p>
+     * Implementations may persist the value asynchronously. But {@link #getLastVersionCode()} has to
+     * return the new value right after this method returns.
+     * </p>
+     */
+    void setLastVersionCode(int versionCode);
+
+    /**
+     * Block until all values passed to {@link #setLastVersionCode(int)} have been persisted.
+     */
+    void flush();
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2012-2015 cketti and contributors
+ * https://github.com/cketti/ckChangeLog/graphs/contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.cketti.library.changelog;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.WebView;
+
+
+/**
+ * Keeps a {@link WebView} around so change log dialogs don't have to create a new one.
+ *
+ * <p>
+ * Creating a {@code WebView} is expensive, especially the first time in a process. The pool holds
+ * at most one idle instance that is shared by all {@link ChangeLog} instances.
+ * {@link #prewarm()} creates it while the main thread is idle, e.g. while the change log is loaded
+ * by {@link ChangeLogLoader}. The idle instance is destroyed when the system asks the app to trim
+ * its memory usage after its UI has been hidden.
+ * </p>
+ *
+ * <p>
+ * The {@code WebView}s are created with a {@link MutableContextWrapper}. While in use, the wrapper
+ * points to the context of the dialog. When a {@code WebView} is returned to the pool, it is
+ * switched back to the application context, so activities aren't leaked.
+ * </p>
+ *
+ * <p>
+ * All methods must be called on the main thread.
+ * </p>
+ *
+ * @see ChangeLog#getWebViewPool()
+ */
+public final class WebViewPool {
+    private static WebViewPool sInstance;
+
+
+    private final Context mApplicationContext;
+    private WebView mIdleWebView;
+    private boolean mPrewarmScheduled = false;
+
+
+    /**
+     * Get the {@code WebViewPool} instance.
+     */
+    public static synchronized WebViewPool getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WebViewPool(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    private WebViewPool(Context applicationContext) {
+        mApplicationContext = applicationContext;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            applicationContext.registerComponentCallbacks(new TrimMemoryCallbacks());
+        }
+    }
+
+    /**
+     * Create a {@code WebView} the next time the main thread is idle, unless the pool already
+     * contains one.
+     *
+     * <p>
+     * This can be called from any thread.
+     * </p>
+     */
+    public void prewarm() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    prewarm();
+                }
+            });
+            return;
+        }
+
+        if (mIdleWebView != null || mPrewarmScheduled) {
+            return;
+        }
+
+        mPrewarmScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mPrewarmScheduled = false;
+                if (mIdleWebView == null) {
+                    mIdleWebView = createWebView();
+                }
+
+                // Only run once
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Take the idle {@code WebView} out of the pool or create a new one.
+     *
+     * @param context
+     *         The context the {@code WebView} is used with, e.g. the context of a dialog.
+     *
+     * @return A {@link Lease} that needs to be released when the {@code WebView} isn't used
+     *         anymore.
+     */
+    public Lease acquire(Context context) {
+        WebView webView = mIdleWebView;
+        mIdleWebView = null;
+        if (webView == null) {
+            webView = createWebView();
+        }
+
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(context);
+
+        return new Lease(webView);
+    }
+
+    /**
+     * Destroy the idle {@code WebView}.
+     */
+    public void clear() {
+        if (mIdleWebView != null) {
+            mIdleWebView.destroy();
+            mIdleWebView = null;
+        }
+    }
+
+    private WebView createWebView() {
+        return new WebView(new MutableContextWrapper(mApplicationContext));
+    }
+
+    private void recycle(WebView webView) {
+        ViewParent parent = webView.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(webView);
+        }
+
+        webView.stopLoading();
+        webView.setWebViewClient(null);
+        webView.getSettings().setJavaScriptEnabled(false);
+        webView.loadUrl("about:blank");
+        webView.clearHistory();
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(mApplicationContext);
+
+        if (mIdleWebView == null) {
+            mIdleWebView = webView;
+        } else {
+            webView.destroy();
+        }
+    }
+
+
+    /**
+     * A {@code WebView} taken from the pool.
+     */
+    public final class Lease {
+        private WebView mWebView;
+
+
+        Lease(WebView webView) {
+            mWebView = webView;
+        }
+
+        /**
+         * Get the {@code WebView}.
+         *
+         * @throws IllegalStateException
+         *         If this lease has been released.
+         */
+        public WebView getWebView() {
+            if (mWebView == null) {
+                throw new IllegalStateException("WebView has been released");
+            }
+
+            return mWebView;
+        }
+
+        /**
+         * Remove the {@code WebView} from its parent and return it to the pool.
+         *
+         * <p>
+         * Does nothing if this lease has already been released.
+         * </p>
+         */
+        public void release() {
+            if (mWebView != null) {
+                WebView webView = mWebView;
+                mWebView = null;
+                recycle(webView);
+            }
+        }
+    }
+
+    /**
+     * Only loaded on Android 4.0 (API 14) and newer.
+     */
+    private final class TrimMemoryCallbacks implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                clear();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // Do nothing
+        }
+
+        @Override
+        public void onLowMemory() {
+            clear();
+        }
+    }
+}
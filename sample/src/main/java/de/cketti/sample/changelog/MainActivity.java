@@ -1,6 +1,7 @@
 package de.cketti.sample.changelog;
 
 import de.cketti.library.changelog.ChangeLog;
+import de.cketti.library.changelog.ChangeLogLoader;
 import android.content.Context;
 import android.os.Bundle;
 import android.support.v4.app.FragmentActivity;
@@ -10,16 +11,41 @@ import android.view.MenuItem;
 
 
 public class MainActivity extends FragmentActivity {
+    private ChangeLogLoader.Request mChangeLogRequest;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        ChangeLog cl = new ChangeLog(this);
-        if (cl.isFirstRun()) {
-            cl.getLogDialog().show();
+        // Read the change log on a background thread and only show the dialog if this is the
+        // first run of this app version.
+        mChangeLogRequest = ChangeLogLoader.loadLogDialogIfFirstRun(
+                new ChangeLogLoader.Factory() {
+                    @Override
+                    public ChangeLog create() {
+                        return new ChangeLog(MainActivity.this);
+                    }
+                },
+                new ChangeLogLoader.Callback() {
+                    @Override
+                    public void onChangeLogLoaded(ChangeLogLoader.Result result) {
+                        mChangeLogRequest = null;
+                        if (result.hasLog()) {
+                            result.createDialog().show();
+                        }
+                    }
+                });
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mChangeLogRequest != null) {
+            mChangeLogRequest.cancel();
+            mChangeLogRequest = null;
         }
+
+        super.onDestroy();
     }
 
     @Override